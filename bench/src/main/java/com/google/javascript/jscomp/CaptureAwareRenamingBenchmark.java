@@ -0,0 +1,119 @@
+package com.google.javascript.jscomp;
+
+import com.google.javascript.jscomp.Compiler;
+import com.google.javascript.rhino.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs CaptureAwareRenamingPass alone on a large generated program with the
+ * default externs. The program is parsed once and reused: only the first run
+ * renames anything, but every run does the same traversals and lookups, and
+ * copying the program for each run would count the copy as allocation by the
+ * pass. Scope creation is counted with a wrapping ScopeCreator and reported
+ * as a secondary result (scopes/s next to ops/s), and the count for a single
+ * run is printed at the end of each trial.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CaptureAwareRenamingBenchmark {
+  @Param({ "100", "1000" })
+  int classCount;
+
+  Compiler compiler;
+  Node externs;
+  Node program;
+  long scopesPerRun = -1;
+
+  static class CountingScopeCreator implements ScopeCreator {
+    final ScopeCreator scopeCreator;
+    long count;
+
+    CountingScopeCreator(ScopeCreator scopeCreator) {
+      this.scopeCreator = scopeCreator;
+    }
+
+    @Override
+    public com.google.javascript.jscomp.Scope createScope(Node node, com.google.javascript.jscomp.Scope parent) {
+      count++;
+      return scopeCreator.createScope(node, parent);
+    }
+  }
+
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  @State(Scope.Thread)
+  public static class ScopeCounters {
+    public long scopes;
+  }
+
+  @Setup
+  public void setup() {
+    compiler = new Compiler();
+    CompilerOptions options = new CompilerOptions();
+    List<SourceFile> sources = Arrays.asList(SourceFile.fromCode("input.js", generateProgram(classCount)));
+    compiler.init(ClosureCompilerBuilder.DEFAULT_EXTERNS, sources, options);
+    compiler.parse();
+    externs = compiler.getRoot().getFirstChild();
+    program = compiler.getRoot().getLastChild();
+  }
+
+  @Benchmark
+  public Node process(ScopeCounters counters) {
+    CountingScopeCreator scopeCreator = new CountingScopeCreator(new SyntacticScopeCreator(compiler));
+    new CaptureAwareRenamingPass(compiler, scopeCreator).process(externs, program);
+    counters.scopes += scopeCreator.count;
+    scopesPerRun = scopeCreator.count;
+    return program;
+  }
+
+  @TearDown
+  public void report() {
+    System.out.println("\nScopes created per run with " + classCount + " classes: " + scopesPerRun);
+  }
+
+  // Classes with methods named after Math functions, namespaces, closures and
+  // a few globals that get captured
+  static String generateProgram(int classCount) {
+    String[] mathNames = { "abs", "floor", "sin", "cos", "sqrt", "max", "min", "round" };
+    StringBuilder builder = new StringBuilder();
+    builder.append("var ns = {};\n");
+    for (int i = 0; i < classCount; i++) {
+      String name = "Class" + i;
+      String method = mathNames[i % mathNames.length];
+      builder.append("/** @constructor */\nfunction ").append(name).append("(x) {\n");
+      builder.append("  this.x = x;\n  this.items = [];\n}\n");
+      builder.append(name).append(".prototype.").append(method).append(" = function(y) {\n");
+      builder.append("  var self = this;\n");
+      builder.append("  var total = Math.").append(method).append("(this.x + y);\n");
+      builder.append("  this.items.forEach(function(item) {\n");
+      builder.append("    total += Math.max(item, self.x);\n");
+      builder.append("  });\n");
+      builder.append("  return total;\n};\n");
+      builder.append("ns.helper").append(i).append(" = function(a, b) {\n");
+      builder.append("  return new ").append(name).append("(a).").append(method).append("(b) + JSON.stringify([a, b]).length;\n");
+      builder.append("};\n");
+      if (i % 50 == 0) {
+        builder.append("var capture").append(i).append(" = ").append(i % 100 == 0 ? "JSON" : "[Date]").append(";\n");
+      }
+    }
+    builder.append("console.log(ns);\n");
+    return builder.toString();
+  }
+}
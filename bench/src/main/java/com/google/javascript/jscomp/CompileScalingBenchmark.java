@@ -0,0 +1,340 @@
+package com.google.javascript.jscomp;
+
+import com.google.common.base.*;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Files;
+import java.io.*;
+import java.util.*;
+
+/**
+ * Measures how builds scale with the size of a project. For every project
+ * size it generates a synthetic project and, in linked, check and optimize
+ * mode, measures a cold build (a fresh JVM, like running gccjs from a
+ * terminal), a warm build (a rebuild in the same JVM), and a watch mode
+ * rebuild (from touching a source file to the end of the build). Results are
+ * printed as CSV with times in milliseconds, one row per size and mode.
+ *
+ * This isn't a JMH benchmark because cold builds need their own process and
+ * a single build is long enough to time directly. Usage:
+ *
+ *   java -cp target/benchmarks.jar com.google.javascript.jscomp.CompileScalingBenchmark \
+ *     [--sizes small,medium,large] [--runs N] [--modes linked,check,optimize]
+ */
+public class CompileScalingBenchmark {
+  static class ProjectSize {
+    String name;
+    int sourceCount;
+    int classesPerSource;
+    int externCount;
+    int shaderCount;
+
+    ProjectSize(String name, int sourceCount, int classesPerSource, int externCount, int shaderCount) {
+      this.name = name;
+      this.sourceCount = sourceCount;
+      this.classesPerSource = classesPerSource;
+      this.externCount = externCount;
+      this.shaderCount = shaderCount;
+    }
+  }
+
+  static final ProjectSize[] SIZES = {
+    new ProjectSize("tiny", 2, 2, 10, 2),
+    new ProjectSize("small", 10, 5, 100, 5),
+    new ProjectSize("medium", 50, 10, 1000, 20),
+    new ProjectSize("large", 200, 15, 5000, 60),
+  };
+
+  static final String[] MODES = { "linked", "check", "optimize" };
+
+  public static void main(String[] args) throws Exception {
+    List<String> sizes = Arrays.asList("tiny", "small", "medium");
+    List<String> modes = Arrays.asList(MODES);
+    int runs = 5;
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      if (args[i].equals("--sizes")) {
+        sizes = Arrays.asList(args[i + 1].split(","));
+      } else if (args[i].equals("--modes")) {
+        modes = Arrays.asList(args[i + 1].split(","));
+      } else if (args[i].equals("--runs")) {
+        runs = Integer.parseInt(args[i + 1]);
+      } else {
+        throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+
+    PrintStream out = System.out;
+    out.println("size,sources,lines,externs,mode,cold_ms,warm_ms,watch_ms");
+    for (String sizeName : sizes) {
+      ProjectSize size = findSize(sizeName);
+      File dir = Files.createTempDir();
+      try {
+        int lines = generateProject(dir, size);
+        for (String mode : modes) {
+          long cold = median(measureCold(dir, mode, runs));
+          long[] warmAndWatch = measureInProcess(dir, mode, runs);
+          out.println(Joiner.on(',').join(size.name, size.sourceCount, lines, size.externCount,
+            mode, cold, warmAndWatch[0], warmAndWatch[1]));
+          out.flush();
+        }
+      } finally {
+        deleteRecursively(dir);
+      }
+    }
+    System.exit(0);
+  }
+
+  static ProjectSize findSize(String name) {
+    for (ProjectSize size : SIZES) {
+      if (size.name.equals(name)) {
+        return size;
+      }
+    }
+    throw new IllegalArgumentException("Unknown project size: " + name);
+  }
+
+  static Flags flagsForMode(File dir, String mode) {
+    Flags flags = new Flags();
+    flags.projectFile = new File(dir, "project.json").getPath();
+    flags.disableHistory = true;
+    if (mode.equals("check")) {
+      flags.checkTypes = true;
+    } else if (mode.equals("optimize")) {
+      flags.optimizedBuild = true;
+    } else if (!mode.equals("linked")) {
+      throw new IllegalArgumentException("Unknown mode: " + mode);
+    }
+    return flags;
+  }
+
+  static String[] argumentsForMode(File dir, String mode) {
+    ArrayList<String> arguments = new ArrayList<String>();
+    arguments.add("--project");
+    arguments.add(new File(dir, "project.json").getPath());
+    arguments.add("--no-history");
+    if (mode.equals("check")) {
+      arguments.add("--check");
+    } else if (mode.equals("optimize")) {
+      arguments.add("--optimize");
+    }
+    return arguments.toArray(new String[0]);
+  }
+
+  static long[] measureCold(File dir, String mode, int runs) throws Exception {
+    String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+    long[] times = new long[runs];
+    for (int i = 0; i < runs; i++) {
+      ArrayList<String> command = new ArrayList<String>();
+      command.add(java);
+      command.add("-cp");
+      command.add(System.getProperty("java.class.path"));
+      command.add(ClosureCompilerBuilder.class.getName());
+      command.addAll(Arrays.asList(argumentsForMode(dir, mode)));
+      ProcessBuilder builder = new ProcessBuilder(command);
+      builder.redirectErrorStream(true);
+      builder.redirectOutput(ProcessBuilder.Redirect.DISCARD);
+      long start = System.nanoTime();
+      int exitCode = builder.start().waitFor();
+      times[i] = (System.nanoTime() - start) / 1000000;
+      if (exitCode != 0) {
+        throw new IllegalStateException("Cold " + mode + " build failed in " + dir);
+      }
+    }
+    return times;
+  }
+
+  // Returns the median warm build time and the median watch mode rebuild
+  // time. The builder's output is hidden while measuring.
+  static long[] measureInProcess(File dir, String mode, int runs) throws Exception {
+    PrintStream out = System.out;
+    System.setOut(new PrintStream(ByteStreams.nullOutputStream()));
+    try {
+      ClosureCompilerBuilder builder = new ClosureCompilerBuilder(flagsForMode(dir, mode));
+
+      // The first build loads classes and warms up the JIT
+      builder.poll(true);
+      long[] warm = new long[runs];
+      for (int i = 0; i < runs; i++) {
+        long start = System.nanoTime();
+        builder.poll(true);
+        warm[i] = (System.nanoTime() - start) / 1000000;
+        checkSucceeded(builder, dir, mode);
+      }
+
+      // Watch mode only rebuilds when a file changes. File times may only
+      // have a resolution of a second, so move them forward explicitly.
+      File edited = new File(dir, "source0.js");
+      long[] watch = new long[runs];
+      for (int i = 0; i < runs; i++) {
+        long start = System.nanoTime();
+        Files.append("\n// Edit " + i + "\n", edited, Charsets.UTF_8);
+        edited.setLastModified(edited.lastModified() + 2000 * (i + 1));
+        builder.poll(false);
+        watch[i] = (System.nanoTime() - start) / 1000000;
+        checkSucceeded(builder, dir, mode);
+      }
+      return new long[] { median(warm), median(watch) };
+    } finally {
+      System.setOut(out);
+    }
+  }
+
+  static void checkSucceeded(ClosureCompilerBuilder builder, File dir, String mode) {
+    if (!builder.latestBuildSucceeded) {
+      throw new IllegalStateException("Warm " + mode + " build failed in " + dir);
+    }
+  }
+
+  static long median(long[] times) {
+    long[] sorted = times.clone();
+    Arrays.sort(sorted);
+    return sorted[sorted.length / 2];
+  }
+
+  // Returns the total number of lines in the generated sources
+  static int generateProject(File dir, ProjectSize size) throws IOException {
+    int lines = 0;
+    ArrayList<String> sources = new ArrayList<String>();
+    Random random = new Random(size.sourceCount);
+
+    // Shaders come first so everything else can use them
+    String shaders = generateShaders(size);
+    Files.write(shaders, new File(dir, "shaders.js"), Charsets.UTF_8);
+    sources.add("shaders.js");
+    lines += countLines(shaders);
+
+    for (int i = 0; i < size.sourceCount; i++) {
+      String source = generateSource(i, size, random);
+      Files.write(source, new File(dir, "source" + i + ".js"), Charsets.UTF_8);
+      sources.add("source" + i + ".js");
+      lines += countLines(source);
+    }
+
+    String main = generateMain(size);
+    Files.write(main, new File(dir, "main.js"), Charsets.UTF_8);
+    sources.add("main.js");
+    lines += countLines(main);
+
+    Files.write(generateExterns(size), new File(dir, "externs.js"), Charsets.UTF_8);
+    Files.write(
+      "{\n" +
+      "  \"target\": \"" + new File(dir, "output.js").getPath() + "\",\n" +
+      "  \"sources\": [\"" + Joiner.on("\", \"").join(absolutePaths(dir, sources)) + "\"],\n" +
+      "  \"externs\": [\"" + new File(dir, "externs.js").getPath() + "\"]\n" +
+      "}\n", new File(dir, "project.json"), Charsets.UTF_8);
+    return lines;
+  }
+
+  static List<String> absolutePaths(File dir, List<String> names) {
+    ArrayList<String> paths = new ArrayList<String>();
+    for (String name : names) {
+      paths.add(new File(dir, name).getPath());
+    }
+    return paths;
+  }
+
+  static int countLines(String text) {
+    int count = 0;
+    for (int i = 0; i < text.length(); i++) {
+      if (text.charAt(i) == '\n') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  static String generateShaders(ProjectSize size) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("/** @typedef {string} */\nvar GLSL;\n\n");
+    LinkedHashMap<String, String> shaders = GLSLCorpus.generate(size.shaderCount, 3, size.shaderCount);
+    for (Map.Entry<String, String> entry : shaders.entrySet()) {
+      builder.append("/** @const {GLSL} */\nvar ").append(entry.getKey().toUpperCase()).append(" = '")
+        .append(entry.getValue().replace("\n", "\\n\\\n")).append("';\n\n");
+    }
+    return builder.toString();
+  }
+
+  // A class hierarchy plus a renderer that draws with WebGL
+  static String generateSource(int index, ProjectSize size, Random random) {
+    StringBuilder builder = new StringBuilder();
+    String base = "Base" + index;
+    builder.append("/**\n * @constructor\n * @param {number} x\n * @param {number} y\n */\n");
+    builder.append("function ").append(base).append("(x, y) {\n");
+    builder.append("  /** @type {number} */\n  this.x = x;\n");
+    builder.append("  /** @type {number} */\n  this.y = y;\n}\n\n");
+    builder.append("/** @return {number} */\n");
+    builder.append(base).append(".prototype.area = function() {\n  return this.x * this.y;\n};\n\n");
+
+    for (int i = 0; i < size.classesPerSource; i++) {
+      String name = "Shape" + index + "_" + i;
+      String parent = i == 0 ? base : "Shape" + index + "_" + random.nextInt(i);
+      builder.append("/**\n * @constructor\n * @extends {").append(parent).append("}\n");
+      builder.append(" * @param {number} x\n * @param {number} y\n */\n");
+      builder.append("function ").append(name).append("(x, y) {\n");
+      builder.append("  ").append(parent).append(".call(this, x, y);\n");
+      builder.append("  /** @type {Array.<number>} */\n  this.values").append(i).append(" = [x, y, x + y];\n}\n");
+      builder.append(name).append(".prototype = Object.create(").append(parent).append(".prototype);\n\n");
+      builder.append("/** @override */\n");
+      builder.append(name).append(".prototype.area = function() {\n");
+      builder.append("  var total = ").append(parent).append(".prototype.area.call(this);\n");
+      builder.append("  for (var i = 0; i < this.values").append(i).append(".length; i++) {\n");
+      builder.append("    total += this.values").append(i).append("[i] * ").append(random.nextInt(100)).append(";\n");
+      builder.append("  }\n  return total;\n};\n\n");
+    }
+
+    builder.append("/**\n * @param {WebGLRenderingContext} gl\n * @param {WebGLProgram} program\n");
+    builder.append(" * @param {number} count\n * @return {number}\n */\n");
+    builder.append("function render").append(index).append("(gl, program, count) {\n");
+    builder.append("  var total = 0;\n");
+    builder.append("  gl.useProgram(program);\n");
+    builder.append("  gl.enable(gl.DEPTH_TEST);\n");
+    builder.append("  gl.clear(gl.COLOR_BUFFER_BIT | gl.DEPTH_BUFFER_BIT);\n");
+    builder.append("  for (var i = 0; i < count; i++) {\n");
+    builder.append("    var shape = new Shape").append(index).append("_")
+      .append(size.classesPerSource - 1).append("(i, count);\n");
+    builder.append("    gl.drawArrays(gl.TRIANGLES, 0, shape.area() | 0);\n");
+    builder.append("    total += shape.area();\n");
+    builder.append("  }\n  return total;\n}\n");
+    return builder.toString();
+  }
+
+  static String generateMain(ProjectSize size) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("/**\n * @param {WebGLRenderingContext} gl\n */\n");
+    builder.append("function main(gl) {\n");
+    builder.append("  var program = gl.createProgram();\n");
+    for (int i = 0; i < size.shaderCount; i++) {
+      builder.append("  var shader").append(i).append(" = gl.createShader(gl.FRAGMENT_SHADER);\n");
+      builder.append("  gl.shaderSource(shader").append(i).append(", SHADER").append(i).append(");\n");
+      builder.append("  gl.attachShader(program, shader").append(i).append(");\n");
+    }
+    builder.append("  gl.linkProgram(program);\n");
+    builder.append("  var total = 0;\n");
+    for (int i = 0; i < size.sourceCount; i++) {
+      builder.append("  total += render").append(i).append("(gl, program, ").append(i + 1).append(");\n");
+    }
+    builder.append("  externalApi0.report(total);\n");
+    builder.append("}\n\n");
+    builder.append("window['main'] = main;\n");
+    return builder.toString();
+  }
+
+  static String generateExterns(ProjectSize size) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < size.externCount; i++) {
+      builder.append("/** @constructor */\nfunction ExternalApi").append(i).append("() {}\n");
+      builder.append("/** @param {number} value */\nExternalApi").append(i).append(".prototype.report = function(value) {};\n");
+      builder.append("/** @type {ExternalApi").append(i).append("} */\nvar externalApi").append(i).append(";\n\n");
+    }
+    return builder.toString();
+  }
+
+  static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+}
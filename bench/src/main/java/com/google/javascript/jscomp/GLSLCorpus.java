@@ -0,0 +1,86 @@
+package com.google.javascript.jscomp;
+
+import java.util.*;
+
+/**
+ * Generates shaders that look like hand-written GLSL: comments of both kinds,
+ * preprocessor blocks, runs of adjacent declarations for the declaration
+ * combiner, and functions with plenty of repeated identifiers. The output only
+ * depends on the size and the seed so results are comparable between runs.
+ */
+class GLSLCorpus {
+  static final String[] TYPES = { "float", "vec2", "vec3", "vec4", "mat3", "mat4" };
+  static final String[] QUALIFIERS = { "uniform", "attribute", "varying" };
+  static final String[] FUNCTIONS = { "sin", "cos", "normalize", "sqrt", "abs", "fract", "exp2" };
+
+  static LinkedHashMap<String, String> generate(String size) {
+    if (size.equals("small")) {
+      return generate(4, 3, 1);
+    }
+    if (size.equals("medium")) {
+      return generate(40, 8, 2);
+    }
+    if (size.equals("huge")) {
+      return generate(200, 30, 3);
+    }
+    throw new IllegalArgumentException("Unknown corpus size: " + size);
+  }
+
+  // Keys are the names of the JavaScript constants holding each shader
+  static LinkedHashMap<String, String> generate(int shaderCount, int functionCount, long seed) {
+    Random random = new Random(seed);
+    LinkedHashMap<String, String> shaders = new LinkedHashMap<String, String>();
+    for (int i = 0; i < shaderCount; i++) {
+      shaders.put("shader" + i, shader(random, i, functionCount));
+    }
+    return shaders;
+  }
+
+  static String shader(Random random, int index, int functionCount) {
+    StringBuilder builder = new StringBuilder();
+    builder.append("/*\n * Generated shader ").append(index).append("\n */\n");
+    builder.append("#ifdef GL_ES\n  precision mediump float;\n#endif\n\n");
+
+    // Inputs, often declared one per line with the same type
+    ArrayList<String> globals = new ArrayList<String>();
+    for (int i = 0, count = 4 + random.nextInt(8); i < count; i++) {
+      String qualifier = QUALIFIERS[random.nextInt(QUALIFIERS.length)];
+      String type = TYPES[random.nextInt(3)];
+      for (int j = 0, run = 1 + random.nextInt(3); j < run; j++) {
+        String name = qualifier.charAt(0) + "Input" + i + "_" + j;
+        globals.add(name);
+        builder.append(qualifier).append(' ').append(type).append(' ').append(name).append(";  // Input\n");
+      }
+    }
+    builder.append('\n');
+
+    // Helper functions that use the inputs and each other
+    ArrayList<String> functions = new ArrayList<String>();
+    for (int i = 0; i < functionCount; i++) {
+      String name = "helperFunction" + index + "_" + i;
+      builder.append("float ").append(name).append("(float value, float scale) {\n");
+      builder.append("  float result = value * scale;\n");
+      builder.append("  float temporary = 0.0, other = 1.0;\n");
+      for (int j = 0, count = 3 + random.nextInt(6); j < count; j++) {
+        builder.append("  temporary = ").append(FUNCTIONS[random.nextInt(FUNCTIONS.length)])
+          .append("(result + ").append(random.nextInt(100)).append(".0) - other;\n");
+        if (!functions.isEmpty() && random.nextBoolean()) {
+          builder.append("  result += ").append(functions.get(random.nextInt(functions.size())))
+            .append("(temporary, scale) * 0.5;\n");
+        } else {
+          builder.append("  result = result * temporary + ").append(random.nextInt(10)).append(".0;\n");
+        }
+      }
+      builder.append("  return result; /* clamp later */\n}\n\n");
+      functions.add(name);
+    }
+
+    builder.append("void main() {\n");
+    builder.append("  float total = 0.0;\n");
+    for (String function : functions) {
+      builder.append("  total += ").append(function).append("(total, 2.0);\n");
+    }
+    builder.append("  gl_FragColor = vec4(total, total * 0.5, length(").append(globals.get(0)).append("), 1.0);\n}\n");
+    return builder.toString();
+  }
+}
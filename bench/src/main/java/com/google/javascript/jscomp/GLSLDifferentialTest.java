@@ -0,0 +1,122 @@
+package com.google.javascript.jscomp;
+
+import java.util.*;
+
+/**
+ * Checks that GLSLMinifier gives exactly the same output as the regular
+ * expression version it replaced. Every stage is compared on the generated
+ * corpora and on random inputs built from GLSL fragments, comment markers
+ * and odd whitespace, and the first mismatch is printed with its input.
+ * Exits with status 1 if anything differs.
+ *
+ *   java -cp target/benchmarks.jar com.google.javascript.jscomp.GLSLDifferentialTest [iterations] [seed]
+ */
+class GLSLDifferentialTest {
+  static final String[] FRAGMENTS = {
+    " ", " ", "  ", "\t", "\n", "\n", "\r\n", "\r", "\f", ";", ";", ",", "{", "}", "(", ")", "[", "]",
+    "=", "+", "-", "++", "--", "*", "/", "/*", "*/", "**/", "//", "#", "# define ", "#define X ", ".",
+    "a", "b", "x1", "foo", "_t", "gl_Position", "GL_ES", "__x", "EXT_y", "1.0", "2", "1e5", "0.5",
+    "float ", "int ", "vec2 ", "vec3 ", "vec4 ", "mat4 ", "sampler2D ", "floatx ", "uniform ", "attribute ",
+    "varying ", "const ", "void main()", "return ", "if", "else", "\u00e9", "?", ":", "!", "<", ">", "&&", "|"
+  };
+
+  static int failures;
+
+  public static void main(String[] args) {
+    int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+
+    // Realistic shaders first
+    for (String size : new String[] { "small", "medium", "huge" }) {
+      LinkedHashMap<String, String> shaders = GLSLCorpus.generate(size);
+      for (String glsl : shaders.values()) {
+        compareStages(glsl);
+      }
+
+      // The second time around every shader comes from the cache
+      HashMap<String, String> expected = LegacyGLSLMinifier.minifyGLSL(shaders);
+      for (int i = 0; i < 2; i++) {
+        if (!expected.equals(OptimizeWebGLPass.minifyGLSL(shaders))) {
+          fail("minifyGLSL on the " + size + " corpus" + (i > 0 ? " from the cache" : ""), "", "");
+        }
+      }
+
+      // Shaders finish in any order when normalized in parallel
+      ArrayList<String> keys = new ArrayList<String>(shaders.keySet());
+      Collections.shuffle(keys, new Random(seed));
+      LinkedHashMap<String, String> shuffled = new LinkedHashMap<String, String>();
+      for (String key : keys) {
+        shuffled.put(key, shaders.get(key));
+      }
+      if (!expected.equals(OptimizeWebGLPass.minifyGLSL(shuffled))) {
+        fail("minifyGLSL on the shuffled " + size + " corpus", "", "");
+      }
+    }
+
+    // Then random junk
+    Random random = new Random(seed);
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < iterations && failures < 10; i++) {
+      builder.setLength(0);
+      int count = random.nextInt(40);
+      for (int j = 0; j < count; j++) {
+        builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+      }
+      compareStages(builder.toString());
+    }
+
+    if (failures > 0) {
+      System.out.println(failures + " mismatches");
+      System.exit(1);
+    }
+    System.out.println("No differences in " + iterations + " random inputs and the generated corpora");
+  }
+
+  static void compareStages(String glsl) {
+    String expected = LegacyGLSLMinifier.tightenSpaces(LegacyGLSLMinifier.removeComments(glsl));
+    String actual = GLSLMinifier.removeCommentsAndTightenSpaces(glsl);
+    if (!expected.equals(actual)) {
+      fail("removeCommentsAndTightenSpaces(" + quote(glsl) + ")", expected, actual);
+      return;
+    }
+
+    String tightened = expected;
+    expected = LegacyGLSLMinifier.combineAdjacentVariableDeclarations(tightened);
+    actual = GLSLMinifier.combineAdjacentVariableDeclarations(tightened);
+    if (!expected.equals(actual)) {
+      fail("combineAdjacentVariableDeclarations(" + quote(tightened) + ")", expected, actual);
+      return;
+    }
+
+    // Compare names on the raw input too since it has more odd characters
+    for (String text : new String[] { glsl, expected }) {
+      HashMap<String, Integer> expectedNames = new HashMap<String, Integer>();
+      HashMap<String, Integer> actualNames = new HashMap<String, Integer>();
+      LegacyGLSLMinifier.findNames(text, expectedNames);
+      GLSLMinifier.findNames(text, actualNames);
+      if (!expectedNames.equals(actualNames)) {
+        fail("findNames(" + quote(text) + ")", expectedNames.toString(), actualNames.toString());
+        return;
+      }
+      HashMap<String, String> renaming = OptimizeWebGLPass.assignNames(expectedNames);
+      String expectedRenamed = LegacyGLSLMinifier.replaceNames(text, renaming);
+      String actualRenamed = GLSLMinifier.replaceNames(text, renaming);
+      if (!expectedRenamed.equals(actualRenamed)) {
+        fail("replaceNames(" + quote(text) + ")", expectedRenamed, actualRenamed);
+        return;
+      }
+    }
+  }
+
+  static void fail(String what, String expected, String actual) {
+    failures++;
+    System.out.println("Mismatch in " + what);
+    System.out.println("  expected: " + quote(expected));
+    System.out.println("  actual:   " + quote(actual));
+  }
+
+  static String quote(String text) {
+    return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")
+      .replace("\r", "\\r").replace("\t", "\\t").replace("\f", "\\f") + "\"";
+  }
+}
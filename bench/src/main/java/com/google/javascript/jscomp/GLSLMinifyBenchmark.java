@@ -0,0 +1,115 @@
+package com.google.javascript.jscomp;
+
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures each stage of OptimizeWebGLPass.minifyGLSL() on its own and the
+ * whole thing together, for both GLSLMinifier and the regular expression
+ * version it replaced. Every stage gets the output of the stages before it,
+ * computed once in setup, so a benchmark only measures its own stage. Each
+ * invocation processes the whole corpus.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GLSLMinifyBenchmark {
+  @Param({ "small", "medium", "huge" })
+  String corpus;
+
+  @Param({ "scanner", "regex" })
+  String implementation;
+
+  boolean regex;
+  LinkedHashMap<String, String> shaders;
+  String[] raw;
+  String[] tightened;
+  String[] combined;
+  HashMap<String, String> renaming;
+
+  @Setup
+  public void setup() {
+    regex = implementation.equals("regex");
+    shaders = GLSLCorpus.generate(corpus);
+    raw = shaders.values().toArray(new String[0]);
+    tightened = new String[raw.length];
+    combined = new String[raw.length];
+    HashMap<String, Integer> names = new HashMap<String, Integer>();
+    for (int i = 0; i < raw.length; i++) {
+      tightened[i] = GLSLMinifier.removeCommentsAndTightenSpaces(raw[i]);
+      combined[i] = GLSLMinifier.combineAdjacentVariableDeclarations(tightened[i]);
+      GLSLMinifier.findNames(combined[i], names);
+    }
+    renaming = OptimizeWebGLPass.assignNames(names);
+  }
+
+  @Benchmark
+  public void removeCommentsAndTightenSpaces(Blackhole blackhole) {
+    for (String glsl : raw) {
+      blackhole.consume(regex ?
+        LegacyGLSLMinifier.tightenSpaces(LegacyGLSLMinifier.removeComments(glsl)) :
+        GLSLMinifier.removeCommentsAndTightenSpaces(glsl));
+    }
+  }
+
+  @Benchmark
+  public void combineAdjacentVariableDeclarations(Blackhole blackhole) {
+    for (String glsl : tightened) {
+      blackhole.consume(regex ?
+        LegacyGLSLMinifier.combineAdjacentVariableDeclarations(glsl) :
+        GLSLMinifier.combineAdjacentVariableDeclarations(glsl));
+    }
+  }
+
+  @Benchmark
+  public HashMap<String, Integer> findNames() {
+    HashMap<String, Integer> names = new HashMap<String, Integer>();
+    for (String glsl : combined) {
+      if (regex) {
+        LegacyGLSLMinifier.findNames(glsl, names);
+      } else {
+        GLSLMinifier.findNames(glsl, names);
+      }
+    }
+    return names;
+  }
+
+  @Benchmark
+  public void replaceNames(Blackhole blackhole) {
+    for (String glsl : combined) {
+      blackhole.consume(regex ?
+        LegacyGLSLMinifier.replaceNames(glsl, renaming) :
+        GLSLMinifier.replaceNames(glsl, renaming));
+    }
+  }
+
+  // Like the first build, with nothing cached
+  @Benchmark
+  public HashMap<String, String> minifyGLSL() {
+    synchronized (GLSLMinifier.cache) {
+      GLSLMinifier.cache.clear();
+    }
+    return regex ? LegacyGLSLMinifier.minifyGLSL(shaders) : OptimizeWebGLPass.minifyGLSL(shaders);
+  }
+
+  // Like a rebuild in watch mode when no shaders changed
+  @Benchmark
+  public HashMap<String, String> minifyGLSLCached() {
+    return regex ? LegacyGLSLMinifier.minifyGLSL(shaders) : OptimizeWebGLPass.minifyGLSL(shaders);
+  }
+}
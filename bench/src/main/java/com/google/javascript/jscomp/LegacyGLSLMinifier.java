@@ -0,0 +1,117 @@
+package com.google.javascript.jscomp;
+
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * The regular expression version of the GLSL minifier that GLSLMinifier
+ * replaced, kept as the reference for GLSLDifferentialTest and as the
+ * baseline for GLSLMinifyBenchmark. minifyGLSL() runs GLSLPreprocessor and
+ * GLSLOptimizer and picks a renaming with OptimizeWebGLPass.renameGLSL() like
+ * the real one so whole outputs can still be compared.
+ */
+class LegacyGLSLMinifier {
+  static final Pattern PREPROCESSOR_COMMAND = Pattern.compile("^[ \t]*#");
+
+  // Both /* style */ and // comments
+  static final Pattern GLSL_COMMENTS = Pattern.compile(
+    "(\\/\\*(?:[^\\*]|\\*[^\\/])*\\*\\/|\\/\\/[^\\n]*)");
+
+  // This includes # or . in the name since it's easier that way
+  static final Pattern GLSL_IDENTIFIERS = Pattern.compile(
+    "(?:#|\\.|\\b)(?!gl_|GL_|OES_|EXT_|WEBGL_|ANGLE_|__)[A-Za-z_][A-Za-z_0-9]*\\b");
+
+  // This assumes that tightenSpaces() has already been run
+  static final Pattern VARIABLE_DECLARATIONS = Pattern.compile(
+    "(^|[{};])((?:uniform|attribute|varying|const) )?(float|int|bool|mat2|" +
+    "mat3|mat4|vec2|vec3|vec4|ivec2|ivec3|ivec4|bvec2|bvec3|bvec4|sampler2D|" +
+    "samplerCube) ([^;]+);(?:\\2)?\\3 ([^;]+);");
+
+  static String removeComments(String glsl) {
+    return GLSL_COMMENTS.matcher(glsl).replaceAll("");
+  }
+
+  static String replace(String source, String pattern, String replace) {
+    return Pattern.compile(pattern).matcher(source).replaceAll(replace);
+  }
+
+  static String tightenSpaces(String glsl) {
+    // Join lines being careful about preprocessor commands
+    StringBuilder builder = new StringBuilder();
+    for (String line : glsl.split("\n")) {
+      builder.append(line).append(
+        PREPROCESSOR_COMMAND.matcher(line).find() ? '\n' : ' ');
+    }
+    glsl = builder.toString();
+
+    // Shrink consecutive spaces into a single space of the same type
+    glsl = glsl.trim();
+    glsl = replace(glsl, "[ \t]+", " ");
+    glsl = replace(glsl, " *[\r\n] *", "\n");
+    glsl = replace(glsl, "[\r\n]+", "\n");
+
+    // These symbols are safe to shrink all space on both sides
+    glsl = replace(glsl, " *([.,;:?|&^*/=!<>(){}\\[\\]]) *", "$1");
+
+    // Be careful about things like "a - --b"
+    glsl = replace(glsl, "\\+ +(?!\\+)", "+");
+    glsl = replace(glsl, "\\- +(?!\\-)", "-");
+    glsl = replace(glsl, "([^\\+]) +\\+", "$1+");
+    glsl = replace(glsl, "([^\\-]) +\\-", "$1-");
+    return glsl;
+  }
+
+  static String combineAdjacentVariableDeclarations(String glsl) {
+    String previous;
+    do {
+      previous = glsl;
+      glsl = VARIABLE_DECLARATIONS.matcher(glsl).replaceFirst("$1$2$3 $4,$5;");
+    } while (!glsl.equals(previous));
+    return glsl;
+  }
+
+  static void findNames(String glsl, HashMap<String, Integer> names) {
+    Matcher matcher = GLSL_IDENTIFIERS.matcher(glsl);
+    while (matcher.find()) {
+      String name = matcher.group();
+      if (!OptimizeWebGLPass.isReserved(name)) {
+        Integer count = names.get(name);
+        names.put(name, count == null ? 1 : count + 1);
+      }
+    }
+  }
+
+  static String replaceNames(String glsl, HashMap<String, String> renaming) {
+    Matcher matcher = GLSL_IDENTIFIERS.matcher(glsl);
+    StringBuffer buffer = new StringBuffer();
+    while (matcher.find()) {
+      String name = matcher.group();
+      matcher.appendReplacement(buffer,
+        OptimizeWebGLPass.isReserved(name) ? name : renaming.get(name));
+    }
+    matcher.appendTail(buffer);
+    return buffer.toString();
+  }
+
+  static <K> HashMap<K, String> minifyGLSL(Map<K, String> glslStringConstants) {
+    ArrayList<K> keys = new ArrayList<K>(glslStringConstants.keySet());
+    GLSLMinifier.Normalized[] normalized = new GLSLMinifier.Normalized[keys.size()];
+    for (int i = 0; i < normalized.length; i++) {
+      String glsl = glslStringConstants.get(keys.get(i));
+      glsl = removeComments(glsl);
+      glsl = tightenSpaces(glsl);
+      glsl = GLSLPreprocessor.preprocess(glsl, Collections.<String, String>emptyMap());
+      glsl = GLSLOptimizer.optimize(glsl);
+      glsl = combineAdjacentVariableDeclarations(glsl);
+      HashMap<String, Integer> names = new HashMap<String, Integer>();
+      findNames(glsl, names);
+      normalized[i] = new GLSLMinifier.Normalized(glsl, names, GLSLMinifier.detectVersion(GLSLOptimizer.tokenize(glsl)));
+    }
+    String[] renamed = OptimizeWebGLPass.renameGLSL(normalized);
+    HashMap<K, String> minified = new HashMap<K, String>();
+    for (int i = 0; i < renamed.length; i++) {
+      minified.put(keys.get(i), renamed[i]);
+    }
+    return minified;
+  }
+}
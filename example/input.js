@@ -32,14 +32,6 @@ var FRAGMENT_SHADER = '\
   }\
 ';
 
-/**
- * Here the uniform is annotated with "@const {GLSL}" so it will be minified
- * along with the shader code.
- *
- * @const {GLSL}
- */
-var COLOR_UNIFORM = 'color';
-
 /**
  * @param {WebGLRenderingContext} gl
  */
@@ -59,7 +51,8 @@ function setup(gl) {
   compileShader(gl.FRAGMENT_SHADER, FRAGMENT_SHADER);
   gl.linkProgram(program);
   gl.useProgram(program);
-  gl.uniform4f(gl.getUniformLocation(program, COLOR_UNIFORM), 1, 0, 0, 1);
+  // Names passed to getUniformLocation() are minified along with the shaders
+  gl.uniform4f(gl.getUniformLocation(program, 'color'), 1, 0, 0, 1);
   gl.bindBuffer(gl.ARRAY_BUFFER, buffer);
   gl.bufferData(gl.ARRAY_BUFFER, new Float32Array([-1, -1, -1, 1, 1, -1, 1, 1]), gl.STATIC_DRAW);
   gl.enableVertexAttribArray(0);
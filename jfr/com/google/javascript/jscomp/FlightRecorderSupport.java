@@ -0,0 +1,113 @@
+package com.google.javascript.jscomp;
+
+import jdk.jfr.*;
+
+/**
+ * The Java Flight Recorder events behind FlightRecorderEvents. This source
+ * set needs Java 11 or later to compile and is built separately from src with
+ * "npm run build-jfr", so the rest of gccjs still builds and runs on older
+ * JVMs. FlightRecorderEvents finds this class by name and does nothing when
+ * it's missing.
+ */
+class FlightRecorderSupport {
+  static Object beginBuild(String project) {
+    BuildEvent event = new BuildEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.project = project;
+    event.begin();
+    return event;
+  }
+
+  static void endBuild(Object object, int sourceCount, int externCount, long outputSize, boolean succeeded) {
+    BuildEvent event = (BuildEvent)object;
+    event.end();
+    event.sourceCount = sourceCount;
+    event.externCount = externCount;
+    event.outputSize = outputSize;
+    event.succeeded = succeeded;
+    event.commit();
+  }
+
+  static Object beginPhase(String phase, String project) {
+    PhaseEvent event = new PhaseEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.phase = phase;
+    event.project = project;
+    event.begin();
+    return event;
+  }
+
+  static void endPhase(Object object) {
+    PhaseEvent event = (PhaseEvent)object;
+    event.end();
+    event.commit();
+  }
+
+  static Object beginPass(String pass, String phase) {
+    PassEvent event = new PassEvent();
+    if (!event.isEnabled()) {
+      return null;
+    }
+    event.pass = pass;
+    event.phase = phase;
+    event.begin();
+    return event;
+  }
+
+  static void endPass(Object object, boolean changed) {
+    PassEvent event = (PassEvent)object;
+    event.end();
+    event.changed = changed;
+    event.commit();
+  }
+}
+
+@Name("gccjs.Build")
+@Label("Build")
+@Category("gccjs")
+class BuildEvent extends Event {
+  @Label("Project")
+  String project;
+
+  @Label("Source Files")
+  int sourceCount;
+
+  @Label("Extern Files")
+  int externCount;
+
+  @Label("Output Size")
+  @DataAmount
+  long outputSize;
+
+  @Label("Succeeded")
+  boolean succeeded;
+}
+
+@Name("gccjs.Phase")
+@Label("Build Phase")
+@Category("gccjs")
+class PhaseEvent extends Event {
+  @Label("Phase")
+  String phase;
+
+  @Label("Project")
+  String project;
+}
+
+@Name("gccjs.Pass")
+@Label("Compiler Pass")
+@Category("gccjs")
+class PassEvent extends Event {
+  @Label("Pass")
+  String pass;
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Changed Code")
+  boolean changed;
+}
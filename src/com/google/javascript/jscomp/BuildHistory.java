@@ -0,0 +1,290 @@
+package com.google.javascript.jscomp;
+
+import java.io.*;
+import java.nio.channels.*;
+import java.text.*;
+import java.util.*;
+
+/**
+ * Keeps a local record of every build so slow trends can be noticed. Each
+ * build is appended to a binary file as a list of named metrics (times are
+ * in microseconds). Metric names are written once as name records the first
+ * time they are used in the file and referred to by index after that, which
+ * keeps each build down to a few hundred bytes.
+ */
+class BuildHistory {
+  static final int NAME_RECORD = 'N';
+  static final int BUILD_RECORD = 'B';
+
+  // Builds are compared against the median of the builds before the most recent ones
+  static final int RECENT_BUILDS = 5;
+  static final int BASELINE_BUILDS = 30;
+  static final double REGRESSION_RATIO = 1.2;
+  static final long REGRESSION_MINIMUM = 20000; // Ignore changes under 20ms
+  static final int MAX_PASSES = 20;
+
+  static class Build {
+    long time;
+    boolean succeeded;
+    boolean optimized;
+    boolean checked;
+    LinkedHashMap<String, Long> metrics = new LinkedHashMap<String, Long>();
+
+    long metric(String name) {
+      Long value = metrics.get(name);
+      return value == null ? 0 : value;
+    }
+  }
+
+  final File file;
+
+  // The names in the file in index order, read on the first append and kept
+  // after that so each build only reads what other processes appended since
+  final ArrayList<String> names = new ArrayList<String>();
+  final HashMap<String, Integer> indices = new HashMap<String, Integer>();
+  long readLength; // How much of the file the names came from
+
+  BuildHistory(File file) {
+    this.file = file;
+  }
+
+  void append(Build build) throws IOException {
+    // The file is locked so builds from other processes can't claim the same
+    // name indices between reading the names and writing this build
+    RandomAccessFile access = new RandomAccessFile(file, "rw");
+    try {
+      access.getChannel().lock();
+      long length = access.length();
+      if (length < readLength) {
+        names.clear();
+        indices.clear();
+        readLength = 0;
+      }
+      if (length > readLength) {
+        access.seek(readLength);
+        read(new DataInputStream(new BufferedInputStream(Channels.newInputStream(access.getChannel()))), names, null);
+        for (int i = indices.size(); i < names.size(); i++) {
+          indices.put(names.get(i), i);
+        }
+      }
+
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream data = new DataOutputStream(bytes);
+      ArrayList<String> added = new ArrayList<String>();
+      HashMap<String, Integer> buildIndices = new HashMap<String, Integer>(indices);
+      for (String name : build.metrics.keySet()) {
+        if (!buildIndices.containsKey(name)) {
+          buildIndices.put(name, buildIndices.size());
+          added.add(name);
+          data.writeByte(NAME_RECORD);
+          data.writeUTF(name);
+        }
+      }
+      data.writeByte(BUILD_RECORD);
+      data.writeLong(build.time);
+      data.writeByte((build.succeeded ? 1 : 0) | (build.optimized ? 2 : 0) | (build.checked ? 4 : 0));
+      writeVarint(data, build.metrics.size());
+      for (Map.Entry<String, Long> entry : build.metrics.entrySet()) {
+        writeVarint(data, buildIndices.get(entry.getKey()));
+        writeVarint(data, Math.max(0, entry.getValue()));
+      }
+
+      // Append everything in one write so an interrupted build can't leave a
+      // name record without the build that uses it
+      access.seek(length);
+      access.write(bytes.toByteArray());
+      for (String name : added) {
+        indices.put(name, names.size());
+        names.add(name);
+      }
+      readLength = length + bytes.size();
+    } finally {
+      access.close();
+    }
+  }
+
+  List<Build> read() throws IOException {
+    ArrayList<Build> builds = new ArrayList<Build>();
+    if (file.exists()) {
+      DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+      try {
+        read(data, new ArrayList<String>(), builds);
+      } finally {
+        data.close();
+      }
+    }
+    return builds;
+  }
+
+  // Adds name records to names and build records to builds unless it's null.
+  // Stops at the first incomplete record in case a write was cut short.
+  static void read(DataInputStream data, List<String> names, List<Build> builds) throws IOException {
+    try {
+      while (true) {
+        int type = data.read();
+        if (type == NAME_RECORD) {
+          names.add(data.readUTF());
+        } else if (type == BUILD_RECORD) {
+          Build build = new Build();
+          build.time = data.readLong();
+          int flags = data.readByte();
+          build.succeeded = (flags & 1) != 0;
+          build.optimized = (flags & 2) != 0;
+          build.checked = (flags & 4) != 0;
+          for (int i = (int)readVarint(data); i > 0; i--) {
+            int index = (int)readVarint(data);
+            build.metrics.put(index < names.size() ? names.get(index) : "?", readVarint(data));
+          }
+          if (builds != null) {
+            builds.add(build);
+          }
+        } else {
+          break;
+        }
+      }
+    } catch (EOFException e) {
+    }
+  }
+
+  static void writeVarint(DataOutputStream data, long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      data.writeByte((int)(value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    data.writeByte((int)value);
+  }
+
+  static long readVarint(DataInputStream data) throws IOException {
+    long value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = data.readUnsignedByte();
+      value |= (long)(b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  static long percentile(List<Long> sorted, double fraction) {
+    if (sorted.isEmpty()) {
+      return 0;
+    }
+    int index = (int)Math.ceil(fraction * sorted.size()) - 1;
+    return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index)));
+  }
+
+  static List<Long> sortedValues(List<Build> builds, String name) {
+    ArrayList<Long> values = new ArrayList<Long>();
+    for (Build build : builds) {
+      if (build.metrics.containsKey(name)) {
+        values.add(build.metric(name));
+      }
+    }
+    Collections.sort(values);
+    return values;
+  }
+
+  static String millis(long micros) {
+    return String.format("%.1f", micros / 1000.0);
+  }
+
+  // Prints percentiles of every timing for successful builds of each kind
+  // and marks timings whose recent median is well above the baseline
+  static String report(List<Build> builds) {
+    StringBuilder builder = new StringBuilder();
+    if (builds.isEmpty()) {
+      return "No builds recorded yet\n";
+    }
+    DateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm");
+    builder.append(builds.size()).append(" builds from ")
+      .append(dateFormat.format(new Date(builds.get(0).time))).append(" to ")
+      .append(dateFormat.format(new Date(builds.get(builds.size() - 1).time))).append('\n');
+
+    // Builds are only comparable to other builds with the same flags
+    for (int mode = 0; mode < 4; mode++) {
+      boolean optimized = (mode & 2) != 0;
+      boolean checked = (mode & 1) != 0;
+      ArrayList<Build> matching = new ArrayList<Build>();
+      for (Build build : builds) {
+        if (build.optimized == optimized && build.checked == checked && build.succeeded) {
+          matching.add(build);
+        }
+      }
+      if (matching.isEmpty()) {
+        continue;
+      }
+
+      int split = Math.max(0, matching.size() - RECENT_BUILDS);
+      List<Build> recent = matching.subList(split, matching.size());
+      List<Build> baseline = matching.subList(Math.max(0, split - BASELINE_BUILDS), split);
+
+      builder.append('\n').append(optimized ? "Optimized" : "Linked")
+        .append(checked ? ", checked" : "").append(" builds (").append(matching.size()).append(" successful)\n");
+      String format = "%-44s %9s %9s %9s %9s %9s  %s\n";
+      builder.append(String.format(format, "Time (ms)", "p50", "p90", "p99", "baseline", "recent", ""));
+
+      // Show the total and phases first, then the slowest passes
+      ArrayList<String> names = new ArrayList<String>();
+      names.add("total");
+      for (Phase phase : Phase.values()) {
+        names.add("phase." + phase.displayName());
+      }
+      final Build latest = matching.get(matching.size() - 1);
+      ArrayList<String> passes = new ArrayList<String>();
+      for (String name : latest.metrics.keySet()) {
+        if (name.startsWith("pass.")) {
+          passes.add(name);
+        }
+      }
+      Collections.sort(passes, new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+          return Long.valueOf(latest.metric(b)).compareTo(latest.metric(a));
+        }
+      });
+      names.addAll(passes.subList(0, Math.min(passes.size(), MAX_PASSES)));
+
+      for (String name : names) {
+        List<Long> all = sortedValues(matching, name);
+        if (all.isEmpty()) {
+          continue;
+        }
+        String flag = "";
+        long baselineMedian = percentile(sortedValues(baseline, name), 0.5);
+        long recentMedian = percentile(sortedValues(recent, name), 0.5);
+        if (!baseline.isEmpty() &&
+            recentMedian > baselineMedian * REGRESSION_RATIO &&
+            recentMedian - baselineMedian > REGRESSION_MINIMUM) {
+          flag = "REGRESSION (+" + Math.round(100.0 * (recentMedian - baselineMedian) / Math.max(1, baselineMedian)) + "%)";
+        }
+        builder.append(String.format(format, name,
+          millis(percentile(all, 0.5)), millis(percentile(all, 0.9)), millis(percentile(all, 0.99)),
+          baseline.isEmpty() ? "-" : millis(baselineMedian), millis(recentMedian), flag));
+      }
+
+      // Counts and sizes are from the latest build, the hit rate is from all of them
+      builder.append(String.format("%-44s %9d\n", "Sources", latest.metric("sources")));
+      builder.append(String.format("%-44s %9d\n", "Externs", latest.metric("externs")));
+      builder.append(String.format("%-44s %9d\n", "Output size (bytes)", latest.metric("outputSize")));
+      long hooks = 0;
+      long skipped = 0;
+      for (Build build : matching) {
+        hooks += build.metric("hooks.run") + build.metric("hooks.skipped");
+        skipped += build.metric("hooks.skipped");
+      }
+      if (hooks > 0) {
+        builder.append(String.format("%-44s %8.1f%%\n", "Hook cache hit rate", 100.0 * skipped / hooks));
+      }
+      long shaders = 0;
+      long cached = 0;
+      for (Build build : matching) {
+        shaders += build.metric("glsl.cached") + build.metric("glsl.minified");
+        cached += build.metric("glsl.cached");
+      }
+      if (shaders > 0) {
+        builder.append(String.format("%-44s %8.1f%%\n", "GLSL cache hit rate", 100.0 * cached / shaders));
+      }
+    }
+    return builder.toString();
+  }
+}
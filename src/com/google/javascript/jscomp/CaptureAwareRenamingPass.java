@@ -13,11 +13,22 @@ import java.util.*;
  */
 public class CaptureAwareRenamingPass implements CompilerPass {
   AbstractCompiler compiler;
+  ScopeCreator scopeCreator;
 
   final String PREFIX = "$CaptureAwareRenamingPass$";
 
   public CaptureAwareRenamingPass(AbstractCompiler compiler) {
+    this(compiler, new SyntacticScopeCreator(compiler));
+  }
+
+  // Benchmarks pass a scope creator that counts the scopes it creates
+  CaptureAwareRenamingPass(AbstractCompiler compiler, ScopeCreator scopeCreator) {
     this.compiler = compiler;
+    this.scopeCreator = scopeCreator;
+  }
+
+  void traverse(Node node, NodeTraversal.Callback callback) {
+    new NodeTraversal(compiler, callback, scopeCreator).traverse(node);
   }
 
   @Override
@@ -25,7 +36,7 @@ public class CaptureAwareRenamingPass implements CompilerPass {
     // Gather global constants
     final HashSet<Var> uncapturedGlobalVars = new HashSet<Var>();
     final HashMap<String, Var> uncapturedGlobalNames = new HashMap<String, Var>();
-    NodeTraversal.traverse(compiler, externs, new NodeTraversal.AbstractShallowCallback() {
+    traverse(externs, new NodeTraversal.AbstractShallowCallback() {
       @Override
       public void visit(NodeTraversal t, Node node, Node parent) {
         if (node.isVar()) {
@@ -41,7 +52,7 @@ public class CaptureAwareRenamingPass implements CompilerPass {
     });
 
     // Narrow down globals to those that are never captured
-    NodeTraversal.traverse(compiler, root, new NodeTraversal.AbstractPostOrderCallback() {
+    traverse(root, new NodeTraversal.AbstractPostOrderCallback() {
       void capture(NodeTraversal t, Node node) {
         while (node.isComma()) {
           node = node.getLastChild();
@@ -98,7 +109,7 @@ public class CaptureAwareRenamingPass implements CompilerPass {
     // Find properties off of uncaptured globals
     final HashSet<String> change = new HashSet<String>();
     final HashSet<String> keep = new HashSet<String>();
-    NodeTraversal.traverse(compiler, externs, new NodeTraversal.AbstractShallowCallback() {
+    traverse(externs, new NodeTraversal.AbstractShallowCallback() {
       @Override
       public void visit(NodeTraversal t, Node node, Node parent) {
         if (node.isGetProp()) {
@@ -123,7 +134,7 @@ public class CaptureAwareRenamingPass implements CompilerPass {
     });
 
     // Just rename those properties when they are not off of uncaptured globals
-    NodeTraversal.traverse(compiler, root, new NodeTraversal.AbstractPostOrderCallback() {
+    traverse(root, new NodeTraversal.AbstractPostOrderCallback() {
       @Override
       public void visit(NodeTraversal t, Node node, Node parent) {
         if (node.isGetProp()) {
@@ -2,9 +2,13 @@
 package com.google.javascript.jscomp;
 
 import com.google.common.base.*;
+import com.google.common.collect.Iterables;
 import com.google.common.io.*;
 import com.google.javascript.jscomp.Compiler;
 import java.io.*;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.regex.*;
 import java.util.logging.*;
@@ -19,6 +23,32 @@ class Flags {
     usage = "Runs internal tests")
   boolean runTests = false;
 
+  @Option(
+    name = "--tests",
+    metaVar = "DIR",
+    handler = StringOptionHandler.class,
+    usage = "The directory of golden files for --run-tests (defaults to tests)")
+  String testsDirectory = null;
+
+  @Option(
+    name = "--check-sizes",
+    handler = BooleanOptionHandler.class,
+    usage = "Compile the projects in the size budgets file and fail if any output is over budget")
+  boolean checkSizes = false;
+
+  @Option(
+    name = "--update-sizes",
+    handler = BooleanOptionHandler.class,
+    usage = "Set the size budgets to the current output sizes")
+  boolean updateSizes = false;
+
+  @Option(
+    name = "--size-budgets",
+    metaVar = "FILE",
+    handler = StringOptionHandler.class,
+    usage = "The size budgets file (defaults to size-budgets.json)")
+  String sizeBudgetsFile = null;
+
   @Option(
     name = "--help",
     aliases = { "-h" },
@@ -70,10 +100,72 @@ class Flags {
     handler = BooleanOptionHandler.class,
     usage = "Pretty-print the output (relevant for --optimize)")
   boolean formatted = false;
+
+  @Option(
+    name = "--profile-passes",
+    handler = BooleanOptionHandler.class,
+    usage = "Print the time taken by each compiler pass")
+  boolean profilePasses = false;
+
+  @Option(
+    name = "--profile-passes-json",
+    metaVar = "FILE",
+    handler = StringOptionHandler.class,
+    usage = "Write the time taken by each compiler pass as JSON")
+  String profilePassesJSON = null;
+
+  @Option(
+    name = "--events",
+    metaVar = "FILE",
+    handler = StringOptionHandler.class,
+    usage = "Stream build events as JSON lines to a file or host:port")
+  String eventsTarget = null;
+
+  @Option(
+    name = "--size-report",
+    handler = BooleanOptionHandler.class,
+    usage = "Print the output size of each source file and custom pass (relevant for --optimize)")
+  boolean sizeReport = false;
+
+  @Option(
+    name = "--size-report-json",
+    metaVar = "FILE",
+    handler = StringOptionHandler.class,
+    usage = "Write the output size of each source file and custom pass as JSON")
+  String sizeReportJSON = null;
+
+  @Option(
+    name = "--max-diagnostics",
+    metaVar = "N",
+    handler = IntOptionHandler.class,
+    usage = "Print at most N errors and warnings per build, 0 for all (defaults to 100)")
+  int maxDiagnostics = 100;
+
+  @Option(
+    name = "--stats",
+    handler = BooleanOptionHandler.class,
+    usage = "Print build time percentiles and regressions from the build history")
+  boolean showStats = false;
+
+  @Option(
+    name = "--history",
+    metaVar = "FILE",
+    handler = StringOptionHandler.class,
+    usage = "The build history file (defaults to .gccjs-history next to the project file)")
+  String historyFile = null;
+
+  @Option(
+    name = "--no-history",
+    handler = BooleanOptionHandler.class,
+    usage = "Don't record builds in the build history")
+  boolean disableHistory = false;
 }
 
 interface Define {
   void apply(CompilerOptions options);
+
+  // GLSL sees true as 1 and false as not defined, see GLSLPreprocessor
+  void applyGLSL(Map<String, String> defines);
 }
 
 class ProjectDescription {
@@ -81,11 +173,13 @@ class ProjectDescription {
   String[] sources; // Equivalent to compiler.jar's "--js" flag
   String[] externs; // Equivalent to compiler.jar's "--externs" flag
   Define[] defines; // Equivalent to compiler.jar's "--define" flag
-  String[] before; // Commands to run before compilation
-  String[] after; // Commands to run after compilation
+  Hook[] before; // Commands to run before compilation
+  Hook[] after; // Commands to run after compilation
   String wrapper; // Equivalent to compiler.jar's "--output_wrapper" flag
   long[] lastSourceTimes;
   long[] lastExternTimes;
+  long[] lastBeforeInputTimes;
+  long[] lastAfterInputTimes;
 
   ProjectDescription(JSONObject contents) throws JSONException {
     if (contents.has("target")) {
@@ -94,11 +188,20 @@ class ProjectDescription {
 
     sources = Globals.parseStrings(contents, "sources");
     externs = Globals.parseStrings(contents, "externs");
-    before = Globals.parseStrings(contents, "before");
-    after = Globals.parseStrings(contents, "after");
+    before = Hook.parseHooks(contents, "before");
+    after = Hook.parseHooks(contents, "after");
     wrapper = contents.optString("wrapper", "%output%");
     lastSourceTimes = new long[sources.length];
     lastExternTimes = new long[externs.length];
+    lastBeforeInputTimes = new long[before.length];
+    lastAfterInputTimes = new long[after.length];
+
+    // Hooks that generate sources must finish before compiling
+    for (Hook hook : before) {
+      if (isGeneratedByHook(hook, sources) || isGeneratedByHook(hook, externs)) {
+        hook.background = false;
+      }
+    }
 
     if (contents.has("defines")) {
       JSONObject object = contents.getJSONObject("defines");
@@ -112,6 +215,32 @@ class ProjectDescription {
     }
   }
 
+  static boolean isGeneratedByHook(Hook hook, String[] files) {
+    for (String file : files) {
+      if (hook.outputsContain(file)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Generated files were changed by the build itself, so don't let those
+  // changes trigger another build in watch mode
+  void updateGeneratedFileTimes() {
+    for (Hook hook : before) {
+      for (int i = 0; i < sources.length; i++) {
+        if (hook.outputsContain(sources[i])) {
+          lastSourceTimes[i] = new File(sources[i]).lastModified();
+        }
+      }
+      for (int i = 0; i < externs.length; i++) {
+        if (hook.outputsContain(externs[i])) {
+          lastExternTimes[i] = new File(externs[i]).lastModified();
+        }
+      }
+    }
+  }
+
   static Define parseDefine(JSONObject object, final String name) throws JSONException {
     final Object property = object.get(name);
     if (property instanceof Boolean) {
@@ -121,6 +250,11 @@ class ProjectDescription {
         public void apply(CompilerOptions options) {
           options.setDefineToBooleanLiteral(name, data);
         }
+
+        @Override
+        public void applyGLSL(Map<String, String> defines) {
+          defines.put(name, data ? "1" : null);
+        }
       };
     } else if (property instanceof Number) {
       final double data = object.getDouble(name);
@@ -129,6 +263,11 @@ class ProjectDescription {
         public void apply(CompilerOptions options) {
           options.setDefineToDoubleLiteral(name, data);
         }
+
+        @Override
+        public void applyGLSL(Map<String, String> defines) {
+          defines.put(name, data == (long) data ? Long.toString((long) data) : Double.toString(data));
+        }
       };
     } else {
       final String data = object.getString(name);
@@ -137,6 +276,11 @@ class ProjectDescription {
         public void apply(CompilerOptions options) {
           options.setDefineToStringLiteral(name, data);
         }
+
+        @Override
+        public void applyGLSL(Map<String, String> defines) {
+          defines.put(name, data);
+        }
       };
     }
   }
@@ -155,6 +299,61 @@ class Globals {
     return strings;
   }
 
+  // Expands a glob like "shaders/**/*.glsl" relative to the current directory
+  static List<File> expandGlob(String pattern) {
+    ArrayList<File> files = new ArrayList<File>();
+
+    // Only search the directory before the first wildcard
+    String base = "";
+    for (String part : pattern.split("/", -1)) {
+      if (part.matches(".*[*?\\[{].*")) {
+        PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        findMatches(new File(base.length() == 0 ? "." : base), base, matcher, files);
+        return files;
+      }
+      base += (base.length() == 0 ? "" : "/") + part;
+    }
+
+    // Patterns without wildcards are just files
+    files.add(new File(pattern));
+    return files;
+  }
+
+  static void findMatches(File dir, String path, PathMatcher matcher, List<File> files) {
+    String[] names = dir.list();
+    if (names == null) {
+      return;
+    }
+    Arrays.sort(names);
+    for (String name : names) {
+      String childPath = path.length() == 0 ? name : path + "/" + name;
+      File child = new File(dir, name);
+      if (child.isDirectory()) {
+        findMatches(child, childPath, matcher, files);
+      } else if (matcher.matches(Paths.get(childPath))) {
+        files.add(new File(childPath));
+      }
+    }
+  }
+
+  // Finds a file in the directory containing src, falling back to the
+  // current directory when the classes were compiled somewhere else
+  static File installedFile(String name) {
+    String path = ClosureCompilerBuilder.class.getResource("ClosureCompilerBuilder.class").getPath();
+    File file = new File(new File(path).getAbsoluteFile().getParent(), "../../../../../" + name);
+    return file.exists() ? file : new File(name);
+  }
+
+  // Cheap stamp for detecting changes without reading the files
+  static long modificationStamp(List<File> files) {
+    long stamp = files.size();
+    for (File file : files) {
+      stamp = stamp * 31 + file.getPath().hashCode();
+      stamp = stamp * 31 + file.lastModified();
+    }
+    return stamp;
+  }
+
   // Manual implementation of relative paths because Java sucks
   static String relativePath(String path, String relativeDir) {
     // Skip past common parts
@@ -183,6 +382,12 @@ class Globals {
     return result;
   }
 
+  static final String GRAY = "\033[90m";
+  static final String RED = "\033[91m";
+  static final String GREEN = "\033[92m";
+  static final String YELLOW = "\033[93m";
+  static final String RESET = "\033[0m";
+
   static void outputColorData(String text) {
     // Only output color data in TTY mode
     Console console = System.console();
@@ -193,29 +398,38 @@ class Globals {
     }
   }
 
+  // For building up colored text to print all at once
+  static String colorCode(String text) {
+    return System.console() != null ? text : "";
+  }
+
   static void grayColor() {
-    outputColorData("\033[90m");
+    outputColorData(GRAY);
   }
 
   static void redColor() {
-    outputColorData("\033[91m");
+    outputColorData(RED);
   }
 
   static void greenColor() {
-    outputColorData("\033[92m");
+    outputColorData(GREEN);
   }
 
   static void yellowColor() {
-    outputColorData("\033[93m");
+    outputColorData(YELLOW);
   }
 
   static void resetColor() {
-    outputColorData("\033[0m");
+    outputColorData(RESET);
   }
 }
 
 class CustomPassConfig extends DefaultPassConfig {
   Flags flags;
+  Map<String, String> glslDefines;
+  HashSet<String> minifiedGLSL = new HashSet<String>(); // Shared by the two GLSL passes
+  PassProfiler profiler; // Null unless passes are being measured
+  SizeReport sizeReport; // Null unless output sizes are being measured
 
   static final PassFactory captureAwareRenaming = new PassFactory("captureAwareRenaming", false) {
     @Override
@@ -224,10 +438,24 @@ class CustomPassConfig extends DefaultPassConfig {
     }
   };
 
-  static final PassFactory optimizeWebGL = new PassFactory("optimizeWebGL", true) {
+  final PassFactory optimizeWebGL = new PassFactory("optimizeWebGL", true) {
+    @Override
+    CompilerPass create(AbstractCompiler compiler) {
+      return new OptimizeWebGLPass(compiler, glslDefines, minifiedGLSL);
+    }
+  };
+
+  final PassFactory shareGLSLStrings = new PassFactory("shareGLSLStrings", true) {
     @Override
     CompilerPass create(AbstractCompiler compiler) {
-      return new OptimizeWebGLPass(compiler);
+      return new ShareGLSLStringsPass(compiler, minifiedGLSL);
+    }
+  };
+
+  static final PassFactory hoistLocationLookups = new PassFactory("hoistLocationLookups", true) {
+    @Override
+    CompilerPass create(AbstractCompiler compiler) {
+      return new HoistLocationLookupsPass(compiler);
     }
   };
 
@@ -238,9 +466,19 @@ class CustomPassConfig extends DefaultPassConfig {
     }
   };
 
-  CustomPassConfig(CompilerOptions options, Flags flags) {
+  CustomPassConfig(CompilerOptions options, Flags flags, Map<String, String> glslDefines,
+      PassProfiler profiler, SizeReport sizeReport) {
     super(options);
     this.flags = flags;
+    this.glslDefines = glslDefines;
+    this.profiler = profiler;
+    this.sizeReport = sizeReport;
+  }
+
+  @Override
+  protected List<PassFactory> getChecks() {
+    List<PassFactory> checks = super.getChecks();
+    return profiler != null ? profiler.wrapAll(checks, Phase.CHECK) : checks;
   }
 
   @Override
@@ -248,10 +486,20 @@ class CustomPassConfig extends DefaultPassConfig {
     ArrayList<PassFactory> optimizations = new ArrayList<PassFactory>();
     optimizations.add(captureAwareRenaming);
     optimizations.add(optimizeWebGL);
+    optimizations.add(hoistLocationLookups);
     optimizations.addAll(super.getOptimizations());
     insertAfter(optimizations, "peepholeOptimizations", peepholeOptimize);
     insertAfter(optimizations, "latePeepholeOptimizations", peepholeOptimize);
-    return optimizations;
+
+    // After everything that inlines variables, but before they're renamed
+    insertBefore(optimizations, "collapseVariableDeclarations", shareGLSLStrings);
+    List<PassFactory> result = profiler != null ? profiler.wrapAll(optimizations, Phase.OPTIMIZE) : optimizations;
+
+    // Measure sizes outside of the profiler so it doesn't include the extra work
+    if (sizeReport != null) {
+      result = sizeReport.wrapPasses(result, captureAwareRenaming, optimizeWebGL, hoistLocationLookups, shareGLSLStrings, peepholeOptimize);
+    }
+    return result;
   }
 
   static void insertAfter(ArrayList<PassFactory> factories, String name, PassFactory factory) {
@@ -262,6 +510,14 @@ class CustomPassConfig extends DefaultPassConfig {
       }
     }
   }
+
+  static void insertBefore(ArrayList<PassFactory> factories, String name, PassFactory factory) {
+    for (int i = 0; i < factories.size(); i++) {
+      if (factories.get(i).getName().equals(name)) {
+        factories.add(i++, factory);
+      }
+    }
+  }
 }
 
 enum ErrorType {
@@ -269,13 +525,42 @@ enum ErrorType {
   WARNING
 }
 
+enum Phase {
+  LOAD,
+  PARSE,
+  CHECK,
+  OPTIMIZE,
+  EMIT,
+  HOOKS;
+
+  String displayName() {
+    return name().toLowerCase();
+  }
+}
+
+// Measures one phase of a build, see ClosureCompilerBuilder.startPhase()
+class PhaseTimer {
+  Phase phase;
+  long startTime;
+  Object flightRecorderEvent;
+}
+
 public class ClosureCompilerBuilder {
   Flags flags;
   long buildStartTime;
   long lastProjectTime;
-  boolean alreadyShowedPopup;
   ProjectDescription project;
   boolean latestBuildSucceeded;
+  HookRunner hookRunner = new HookRunner();
+  EventStream events; // Null unless streaming events
+  DiagnosticReport diagnostics;
+  Notifier notifier = new Notifier();
+  long[] phaseTimes = new long[Phase.values().length]; // In nanoseconds
+  long outputSize;
+  Object buildEvent; // For Java Flight Recorder, null when not recording
+  BuildHistory history; // Null unless recording builds
+  PassProfiler lastProfiler; // Null unless the latest build compiled
+  ArrayList<HookRunner.Run> hookRuns = new ArrayList<HookRunner.Run>();
 
   static final DiagnosticType ERROR = DiagnosticType.error("ERROR", "{0}");
   static final List<SourceFile> DEFAULT_EXTERNS = new ArrayList<SourceFile>();
@@ -299,6 +584,10 @@ public class ClosureCompilerBuilder {
 
   ClosureCompilerBuilder(Flags flags) {
     this.flags = flags;
+    diagnostics = new DiagnosticReport(flags.maxDiagnostics);
+    if (!flags.disableHistory) {
+      history = new BuildHistory(historyFile(flags));
+    }
 
     // Watching implies checking (otherwise, why are you watching?)
     if (flags.watchFiles) {
@@ -328,27 +617,44 @@ public class ClosureCompilerBuilder {
   }
 
   void buildProject() {
-    // Go through list of commands to run before compilation
-    if (!runCommands(project.before)) {
-      reportFailure();
+    Arrays.fill(phaseTimes, 0);
+    outputSize = 0;
+    lastProfiler = null;
+    hookRuns.clear();
+    buildEvent = FlightRecorderEvents.beginBuild(flags.projectFile);
+    emitEvent("buildStart", "project", flags.projectFile,
+      "optimize", flags.optimizedBuild, "check", flags.checkTypes);
+
+    // Start the commands to run before compilation. Commands marked as
+    // background commands may keep running while compiling.
+    HookRunner.Run before = startHooks(project.before);
+    if (!awaitHooks(before, false)) {
+      finishBuild(before, false);
       return;
     }
+    project.updateGeneratedFileTimes();
 
     // Fast builds just link to the sources
     if (!flags.optimizedBuild) {
-      if (!createLinkedTargetFile()) {
-        reportFailure();
+      PhaseTimer emit = startPhase(Phase.EMIT);
+      boolean created = createLinkedTargetFile();
+      endPhase(emit);
+      if (!created) {
+        finishBuild(before, false);
         return;
       }
+      outputSize = project.target != null ? new File(project.target).length() : 0;
       if (!flags.checkTypes) {
-        reportSuccess();
+        finishBuild(before, true);
         return;
       }
     } else {
       removeTargetFile();
     }
 
-    // Run the compiler
+    // Load the files up front so reading them isn't counted as parsing. Read
+    // errors are ignored here because the compiler will report them.
+    PhaseTimer load = startPhase(Phase.LOAD);
     List<SourceFile> externs = new ArrayList<SourceFile>(DEFAULT_EXTERNS);
     List<SourceFile> sources = new ArrayList<SourceFile>();
     for (String extern : project.externs) {
@@ -357,8 +663,29 @@ public class ClosureCompilerBuilder {
     for (String source : project.sources) {
       sources.add(SourceFile.fromFile(source, Charsets.UTF_8));
     }
+    for (SourceFile file : Iterables.concat(externs, sources)) {
+      try {
+        file.getCode();
+      } catch (IOException e) {
+      }
+    }
+    endPhase(load);
+
+    // Run the compiler, using the first pass of each phase to split it up
     Compiler compiler = new Compiler();
-    Result result = compile(compiler, externs, sources, Arrays.asList(project.defines), flags);
+    PassProfiler profiler = lastProfiler = new PassProfiler();
+    SizeReport sizeReport = flags.sizeReport || flags.sizeReportJSON != null ? new SizeReport() : null;
+    long compileStart = System.nanoTime();
+    profiler.startPhases(flags.projectFile);
+    Result result = compile(compiler, externs, sources, Arrays.asList(project.defines), flags, profiler, sizeReport);
+    profiler.endPhases();
+    long compileEnd = System.nanoTime();
+    long checkStart = profiler.phaseStartTime(Phase.CHECK, compileEnd);
+    long optimizeStart = profiler.phaseStartTime(Phase.OPTIMIZE, compileEnd);
+    phaseTimes[Phase.PARSE.ordinal()] += checkStart - compileStart;
+    phaseTimes[Phase.CHECK.ordinal()] += optimizeStart - checkStart;
+    phaseTimes[Phase.OPTIMIZE.ordinal()] += compileEnd - optimizeStart;
+    reportPassProfile(profiler);
 
     // Report diagnostics
     for (JSError error : result.errors) {
@@ -371,16 +698,59 @@ public class ClosureCompilerBuilder {
     // Finish the build, including the list of commands to run after compilation
     if (result.errors.length > 0 ||
         flags.disableWarnings && result.warnings.length > 0 ||
-        flags.optimizedBuild && !createOptimizedTargetFile(compiler) ||
-        !runCommands(project.after)) {
-      reportFailure();
+        flags.optimizedBuild && !emitOptimizedTargetFile(compiler, sizeReport) ||
+        !awaitHooks(before, true) ||
+        !awaitHooks(startHooks(project.after), true)) {
+      finishBuild(before, false);
     } else {
       reportSuccess();
     }
   }
 
+  boolean emitOptimizedTargetFile(Compiler compiler, SizeReport sizeReport) {
+    if (project.target == null && sizeReport == null) {
+      return true;
+    }
+    PhaseTimer emit = startPhase(Phase.EMIT);
+    String code = compiler.toSource();
+    boolean created = createOptimizedTargetFile(code);
+    endPhase(emit);
+    outputSize = code.length();
+    if (sizeReport != null) {
+      reportSizes(compiler, code, sizeReport);
+    }
+    return created;
+  }
+
+  PhaseTimer startPhase(Phase phase) {
+    PhaseTimer timer = new PhaseTimer();
+    timer.phase = phase;
+    timer.flightRecorderEvent = FlightRecorderEvents.beginPhase(phase, flags.projectFile);
+    timer.startTime = System.nanoTime();
+    return timer;
+  }
+
+  void endPhase(PhaseTimer timer) {
+    phaseTimes[timer.phase.ordinal()] += System.nanoTime() - timer.startTime;
+    FlightRecorderEvents.endPhase(timer.flightRecorderEvent);
+  }
+
+  // Background commands from before compilation must finish before the build does
+  void finishBuild(HookRunner.Run before, boolean succeeded) {
+    if (awaitHooks(before, true) && succeeded) {
+      reportSuccess();
+    } else {
+      reportFailure();
+    }
+  }
+
   static Result compile(Compiler compiler, List<SourceFile> externs,
       List<SourceFile> sources, List<Define> defines, Flags flags) {
+    return compile(compiler, externs, sources, defines, flags, null, null);
+  }
+
+  static Result compile(Compiler compiler, List<SourceFile> externs, List<SourceFile> sources,
+      List<Define> defines, Flags flags, PassProfiler profiler, SizeReport sizeReport) {
     // Initialize the compiler
     JSModule module = new JSModule("target");
     for (SourceFile source : sources) {
@@ -393,15 +763,20 @@ public class ClosureCompilerBuilder {
     WarningLevel.VERBOSE.setOptionsForWarningLevel(options);
     CompilationLevel.ADVANCED_OPTIMIZATIONS.setOptionsForCompilationLevel(options);
     CompilationLevel.ADVANCED_OPTIMIZATIONS.setTypeBasedOptimizationOptions(options);
+    HashMap<String, String> glslDefines = new HashMap<String, String>();
     for (Define define : defines) {
       define.apply(options);
+      define.applyGLSL(glslDefines);
     }
     options.ideMode = !flags.optimizedBuild;
     options.setTrustedStrings(true);
 
     // Run the compiler without printing anything
     Compiler.setLoggingLevel(Level.OFF);
-    compiler.setPassConfig(new CustomPassConfig(options, flags));
+    if (sizeReport != null) {
+      SizeReport.prepareOptions(options);
+    }
+    compiler.setPassConfig(new CustomPassConfig(options, flags, glslDefines, profiler, sizeReport));
     compiler.setErrorManager(new BasicErrorManager() {
       @Override
       public void println(CheckLevel level, JSError error) {}
@@ -412,56 +787,55 @@ public class ClosureCompilerBuilder {
     return compiler.compileModules(externs, Arrays.asList(module), options);
   }
 
-  boolean runCommands(String[] commands) {
-    for (String command : commands) {
-      try {
-        int exitCode = Runtime.getRuntime().exec(command).waitFor();
-        if (exitCode != 0) {
-          reportError("Unexpected exit code " + exitCode + ": " + command);
-          return false;
-        }
-      } catch (IOException e) {
-        reportError(e);
-        return false;
-      } catch (InterruptedException e) {
-        reportError(e);
-        return false;
-      }
+  HookRunner.Run startHooks(Hook[] hooks) {
+    HookRunner.Run run = hookRunner.start(hooks);
+    hookRuns.add(run);
+    return run;
+  }
+
+  boolean awaitHooks(HookRunner.Run run, boolean includeBackground) {
+    boolean succeeded;
+    PhaseTimer hooks = startPhase(Phase.HOOKS);
+    try {
+      succeeded = includeBackground ? run.awaitAll() : run.awaitForeground();
+    } catch (InterruptedException e) {
+      reportError(e);
+      return false;
+    } finally {
+      endPhase(hooks);
     }
-    return true;
+    for (String error : run.takeErrors()) {
+      reportError(error);
+    }
+    return succeeded;
   }
 
   void poll(boolean isFirstPoll) {
     // Reset build state
     buildStartTime = new Date().getTime();
     latestBuildSucceeded = false;
-    alreadyShowedPopup = false;
 
-    // Check the project file for updates
+    // Check the project file for updates. Everything else counts as changed
+    // when the project changes, so only the project file is reported then.
     long projectTime = new File(flags.projectFile).lastModified();
-    boolean shouldReportChanges = !isFirstPoll;
-    boolean changed = false;
-    if (isFirstPoll || projectTime != lastProjectTime) {
-      if (shouldReportChanges) {
-        reportChange(flags.projectFile);
-        shouldReportChanges = false;
+    boolean projectChanged = isFirstPoll || projectTime != lastProjectTime;
+    if (projectChanged) {
+      if (!isFirstPoll) {
+        reportChanges(Arrays.asList(flags.projectFile));
       }
       parseProject();
-      changed = true;
       lastProjectTime = projectTime;
     }
 
     // Check the other files for updates
     if (project != null) {
+      ArrayList<String> changes = new ArrayList<String>();
+
       // Check sources
       for (int i = 0; i < project.sources.length; i++) {
         long sourceTime = new File(project.sources[i]).lastModified();
-        if (!changed && project.lastSourceTimes[i] != sourceTime) {
-          if (shouldReportChanges) {
-            reportChange(project.sources[i]);
-            shouldReportChanges = false;
-          }
-          changed = true;
+        if (!projectChanged && project.lastSourceTimes[i] != sourceTime) {
+          changes.add(project.sources[i]);
         }
         project.lastSourceTimes[i] = sourceTime;
       }
@@ -469,29 +843,59 @@ public class ClosureCompilerBuilder {
       // Check externs
       for (int i = 0; i < project.externs.length; i++) {
         long externTime = new File(project.externs[i]).lastModified();
-        if (!changed && project.lastExternTimes[i] != externTime) {
-          if (shouldReportChanges) {
-            reportChange(project.externs[i]);
-            shouldReportChanges = false;
-          }
-          changed = true;
+        if (!projectChanged && project.lastExternTimes[i] != externTime) {
+          changes.add(project.externs[i]);
         }
         project.lastExternTimes[i] = externTime;
       }
 
+      // Check inputs of hooks
+      checkHookInputs(project.before, project.lastBeforeInputTimes, projectChanged, changes);
+      checkHookInputs(project.after, project.lastAfterInputTimes, projectChanged, changes);
+
       // Build again when files are changed
-      if (isFirstPoll || changed) {
+      if (projectChanged || !changes.isEmpty()) {
+        if (!changes.isEmpty()) {
+          reportChanges(changes);
+        }
         buildProject();
       }
     }
+
+    // Errors from loading the project aren't part of a build
+    flushDiagnostics();
+  }
+
+  void checkHookInputs(Hook[] hooks, long[] lastInputTimes, boolean projectChanged, List<String> changes) {
+    for (int i = 0; i < hooks.length; i++) {
+      if (hooks[i].inputs == null) {
+        continue;
+      }
+      long inputTime = Globals.modificationStamp(hooks[i].inputFiles());
+      if (!projectChanged && lastInputTimes[i] != inputTime) {
+        changes.add("inputs of " + hooks[i].name);
+      }
+      lastInputTimes[i] = inputTime;
+    }
   }
 
   void run() {
+    if (flags.eventsTarget != null) {
+      try {
+        events = EventStream.open(flags.eventsTarget);
+      } catch (IOException e) {
+        reportError("Could not open " + flags.eventsTarget + ": " + e.getMessage());
+      }
+    }
+
     // Try to build at least once
     poll(true);
 
     // When not watching, use the exit code to indicate success
     if (!flags.watchFiles) {
+      if (events != null) {
+        events.close();
+      }
       System.exit(latestBuildSucceeded ? 0 : 1);
     }
 
@@ -507,7 +911,7 @@ public class ClosureCompilerBuilder {
       try {
         poll(false);
       } catch (Throwable t) {
-        showPopup(t.getMessage(), null, 0);
+        notifier.show(t.getMessage(), null, 0);
         t.printStackTrace(System.out);
       }
     }
@@ -533,7 +937,7 @@ public class ClosureCompilerBuilder {
     return true;
   }
 
-  boolean createOptimizedTargetFile(Compiler compiler) {
+  boolean createOptimizedTargetFile(String code) {
     if (project.target == null) {
       return true;
     }
@@ -544,7 +948,7 @@ public class ClosureCompilerBuilder {
       reportError(e);
       return false;
     }
-    writer.println(project.wrapper.replace("%output%", compiler.toSource()));
+    writer.println(project.wrapper.replace("%output%", code));
     writer.close();
     return true;
   }
@@ -560,8 +964,116 @@ public class ClosureCompilerBuilder {
     return new Date().getTime() - buildStartTime;
   }
 
-  void reportChange(String file) {
-    reportStatus("\nDetected change: " + file);
+  void emitEvent(String type, Object... properties) {
+    if (events != null) {
+      events.emit(type, properties);
+    }
+  }
+
+  void emitBuildResult(boolean succeeded, long time) {
+    for (Phase phase : Phase.values()) {
+      emitEvent("phase", "phase", phase.displayName(), "millis", phaseTimes[phase.ordinal()] / 1e6);
+    }
+    emitEvent("result", "success", succeeded, "millis", time, "outputSize", outputSize);
+    FlightRecorderEvents.endBuild(buildEvent, project.sources.length, project.externs.length, outputSize, succeeded);
+    buildEvent = null;
+    recordBuild(succeeded, time);
+  }
+
+  static File historyFile(Flags flags) {
+    if (flags.historyFile != null) {
+      return new File(flags.historyFile);
+    }
+    return new File(new File(flags.projectFile).getAbsoluteFile().getParentFile(), ".gccjs-history");
+  }
+
+  void recordBuild(boolean succeeded, long time) {
+    if (history == null) {
+      return;
+    }
+    BuildHistory.Build build = new BuildHistory.Build();
+    build.time = System.currentTimeMillis();
+    build.succeeded = succeeded;
+    build.optimized = flags.optimizedBuild;
+    build.checked = flags.checkTypes;
+    build.metrics.put("total", time * 1000);
+    for (Phase phase : Phase.values()) {
+      build.metrics.put("phase." + phase.displayName(), phaseTimes[phase.ordinal()] / 1000);
+    }
+    if (lastProfiler != null) {
+      for (PassProfiler.PassStats pass : lastProfiler.sortedStats()) {
+        build.metrics.put("pass." + pass.name, pass.nanos / 1000);
+      }
+    }
+    build.metrics.put("sources", (long)project.sources.length);
+    build.metrics.put("externs", (long)project.externs.length);
+    build.metrics.put("outputSize", outputSize);
+    long hooksRun = 0;
+    long hooksSkipped = 0;
+    for (HookRunner.Run run : hookRuns) {
+      synchronized (run) {
+        hooksRun += run.executedCount;
+        hooksSkipped += run.skippedCount;
+      }
+    }
+    build.metrics.put("hooks.run", hooksRun);
+    build.metrics.put("hooks.skipped", hooksSkipped);
+    long[] glslCounts = GLSLMinifier.takeCacheCounts();
+    build.metrics.put("glsl.cached", glslCounts[0]);
+    build.metrics.put("glsl.minified", glslCounts[1]);
+    try {
+      history.append(build);
+    } catch (IOException e) {
+      // Don't fail the build because of the history
+      reportStatus("Could not record build in " + history.file + ": " + e.getMessage());
+      history = null;
+    }
+  }
+
+  static void printStats(Flags flags) {
+    try {
+      System.out.print(BuildHistory.report(new BuildHistory(historyFile(flags)).read()));
+    } catch (IOException e) {
+      System.out.println("Could not read " + historyFile(flags) + ": " + e.getMessage());
+      System.exit(1);
+    }
+  }
+
+  void reportPassProfile(PassProfiler profiler) {
+    if (flags.profilePasses) {
+      reportStatus(profiler.toTable());
+    }
+    if (flags.profilePassesJSON != null) {
+      try {
+        Files.write(profiler.toJSON().toString(2), new File(flags.profilePassesJSON), Charsets.UTF_8);
+      } catch (IOException e) {
+        reportError(e);
+      } catch (JSONException e) {
+        reportError(e);
+      }
+    }
+  }
+
+  void reportSizes(Compiler compiler, String code, SizeReport sizeReport) {
+    try {
+      sizeReport.attributeOutput(compiler, code);
+      if (flags.sizeReport) {
+        reportStatus(sizeReport.toTable());
+      }
+      if (flags.sizeReportJSON != null) {
+        Files.write(sizeReport.toJSON().toString(2), new File(flags.sizeReportJSON), Charsets.UTF_8);
+      }
+    } catch (Exception e) {
+      reportError("Could not create size report: " + e.getMessage());
+    }
+  }
+
+  // Only the first change is printed since the others are usually noise
+  void reportChanges(List<String> files) {
+    reportStatus("\nDetected change: " + files.get(0));
+    for (String file : files) {
+      emitEvent("change", "file", file);
+    }
   }
 
   void reportStatus(String text) {
@@ -571,16 +1083,22 @@ public class ClosureCompilerBuilder {
   }
 
   void reportFailure() {
+    long time = elapsedBuildTime();
+    flushDiagnostics();
     Globals.redColor();
     System.out.print("Failure");
-    reportTime(elapsedBuildTime());
+    reportTime(time);
+    emitBuildResult(false, time);
   }
 
   void reportSuccess() {
+    long time = elapsedBuildTime();
+    flushDiagnostics();
     Globals.greenColor();
     System.out.print("Success");
-    reportTime(elapsedBuildTime());
+    reportTime(time);
     latestBuildSucceeded = true;
+    emitBuildResult(true, time);
   }
 
   void reportTime(long time) {
@@ -596,51 +1114,34 @@ public class ClosureCompilerBuilder {
   }
 
   void reportError(JSError error, ErrorType errorType) {
-    // Describe where the location occurred
-    String location =
-      error.sourceName == null || error.sourceName.length() == 0 ? "" :
-      error.lineNumber == -1 ? " (in " + error.sourceName + ")" :
-      " (line " + error.lineNumber + " of " + error.sourceName + ")";
-
-    // Try to report errors using the OS if we're in watch mode, but only
-    // show the popup in watch mode and only for the first error/warning
-    if (flags.watchFiles && !alreadyShowedPopup) {
-      showPopup(error.description + location, error.sourceName, error.lineNumber);
-      alreadyShowedPopup = true;
-    }
+    emitEvent("diagnostic",
+      "level", errorType == ErrorType.ERROR ? "error" : "warning",
+      "description", error.description,
+      "file", error.sourceName != null ? error.sourceName : JSONObject.NULL,
+      "line", error.lineNumber);
+
+    // Diagnostics are printed together at the end of the build
+    diagnostics.add(error, errorType);
+  }
 
-    // Always print stuff to the console
-    String[] parts = error.description.split("\n", 2);
-    if (errorType == ErrorType.ERROR) {
-      Globals.redColor(); System.out.print("Error: ");
-    } else {
-      Globals.yellowColor(); System.out.print("Warning: ");
-    }
-    Globals.resetColor(); System.out.print(parts[0]);
-    Globals.grayColor(); System.out.println(location);
-    if (parts.length > 1) {
-      System.out.println(parts[1]);
+  void flushDiagnostics() {
+    if (diagnostics.isEmpty()) {
+      return;
     }
-    Globals.resetColor();
-  }
+    System.out.print(diagnostics.render());
+    System.out.flush();
 
-  void showPopup(String text, String file, int line) {
-    String TERMINAL_NOTIFIER_PATH = "../../../../../node_modules/terminal-notifier/terminal-notifier.js";
-    String path = ClosureCompilerBuilder.class.getResource("ClosureCompilerBuilder.class").getPath();
-    path = new File(new File(path).getAbsoluteFile().getParent(), TERMINAL_NOTIFIER_PATH).getAbsolutePath();
-    try {
-      Runtime.getRuntime().exec(new String[] {
-        "node",
-        path,
-        "-title", "Google Closure Compiler",
-        "-group", "closure-compiler-builder",
-        "-message", text,
-        "-execute", getEditorOpenCommand(file, line)
-      });
-    } catch (IOException e) {
-      // Fall back to a terminal beep if terminal-notifier fails
-      System.out.print("\007");
+    // Try to report errors using the OS if we're in watch mode, but only
+    // show one popup for the whole build
+    if (flags.watchFiles) {
+      DiagnosticReport.Diagnostic first = diagnostics.first();
+      String text = first.error.description + first.location;
+      if (diagnostics.diagnostics.size() > 1) {
+        text = diagnostics.summary() + ", first: " + text;
+      }
+      notifier.show(text, first.error.sourceName, first.error.lineNumber);
     }
+    diagnostics.clear();
   }
 
   static String getEditorOpenCommand(String file, int line) {
@@ -675,6 +1176,19 @@ public class ClosureCompilerBuilder {
     System.out.println("  \"wrapper\": \"(function() {%output%})();\"");
     System.out.println("}");
     System.out.println();
+    System.out.println("Hook format (JSON):");
+    System.out.println("{");
+    System.out.println("  // Required");
+    System.out.println("  \"command\": \"before.sh\",");
+    System.out.println("");
+    System.out.println("  // Optional");
+    System.out.println("  \"name\": \"shaders\", // Defaults to the command");
+    System.out.println("  \"requires\": [\"assets\"], // Defaults to the previous hook");
+    System.out.println("  \"background\": true, // Before hooks only, overlaps compilation");
+    System.out.println("  \"inputs\": [\"shaders/**.glsl\"], // Skip when these are unchanged");
+    System.out.println("  \"outputs\": [\"shaders.js\"] // Run again when these change");
+    System.out.println("}");
+    System.out.println();
   }
 
   public static void main(String[] args) {
@@ -688,7 +1202,31 @@ public class ClosureCompilerBuilder {
       } else {
         // Run tests from here
         if (flags.runTests) {
-          Tests.run();
+          boolean passed;
+          try {
+            passed = Tests.run(flags.testsDirectory);
+          } catch (Exception e) {
+            System.out.println(e.getMessage());
+            passed = false;
+          }
+          System.exit(passed ? 0 : 1);
+        }
+
+        // Check output sizes instead of building
+        if (flags.checkSizes || flags.updateSizes) {
+          boolean passed;
+          try {
+            passed = SizeBudgets.run(flags.sizeBudgetsFile, flags.updateSizes);
+          } catch (Exception e) {
+            System.out.println(e.getMessage());
+            passed = false;
+          }
+          System.exit(passed ? 0 : 1);
+        }
+
+        // Report on previous builds instead of building
+        if (flags.showStats) {
+          printStats(flags);
           System.exit(0);
         }
 
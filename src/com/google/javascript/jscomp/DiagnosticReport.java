@@ -0,0 +1,193 @@
+package com.google.javascript.jscomp;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+/**
+ * Collects the diagnostics from a build and prints them all at once, since
+ * printing each one with separate writes for every color change takes
+ * seconds when a build has thousands of warnings. Diagnostics are grouped by
+ * file in the order the files were first seen, exact duplicates are dropped,
+ * and only the first few are printed followed by a count of the rest. Errors
+ * are preferred over warnings when deciding which ones to print.
+ */
+class DiagnosticReport {
+  static class Diagnostic {
+    JSError error;
+    ErrorType type;
+    String location;
+  }
+
+  final int limit; // Zero means no limit
+  final LinkedHashMap<String, ArrayList<Diagnostic>> diagnosticsByFile = new LinkedHashMap<String, ArrayList<Diagnostic>>();
+  final ArrayList<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+  final HashSet<String> seen = new HashSet<String>();
+  int errorCount;
+  int warningCount;
+  int duplicateCount;
+
+  DiagnosticReport(int limit) {
+    this.limit = limit;
+  }
+
+  void add(JSError error, ErrorType type) {
+    if (!seen.add(type + ":" + error.sourceName + ":" + error.lineNumber + ":" + error.description)) {
+      duplicateCount++;
+      return;
+    }
+    Diagnostic diagnostic = new Diagnostic();
+    diagnostic.error = error;
+    diagnostic.type = type;
+    diagnostic.location = describeLocation(error);
+    String file = error.sourceName == null ? "" : error.sourceName;
+    ArrayList<Diagnostic> group = diagnosticsByFile.get(file);
+    if (group == null) {
+      group = new ArrayList<Diagnostic>();
+      diagnosticsByFile.put(file, group);
+    }
+    group.add(diagnostic);
+    diagnostics.add(diagnostic);
+    if (type == ErrorType.ERROR) {
+      errorCount++;
+    } else {
+      warningCount++;
+    }
+  }
+
+  static String describeLocation(JSError error) {
+    return
+      error.sourceName == null || error.sourceName.length() == 0 ? "" :
+      error.lineNumber == -1 ? " (in " + error.sourceName + ")" :
+      " (line " + error.lineNumber + " of " + error.sourceName + ")";
+  }
+
+  boolean isEmpty() {
+    return diagnostics.isEmpty();
+  }
+
+  void clear() {
+    diagnosticsByFile.clear();
+    diagnostics.clear();
+    seen.clear();
+    errorCount = warningCount = duplicateCount = 0;
+  }
+
+  // The diagnostic that should be opened in an editor
+  Diagnostic first() {
+    for (Diagnostic diagnostic : diagnostics) {
+      if (diagnostic.type == ErrorType.ERROR) {
+        return diagnostic;
+      }
+    }
+    return diagnostics.isEmpty() ? null : diagnostics.get(0);
+  }
+
+  String summary() {
+    return
+      count(errorCount, "error") +
+      (errorCount > 0 && warningCount > 0 ? ", " : "") +
+      count(warningCount, "warning");
+  }
+
+  static String count(int count, String noun) {
+    return count == 0 ? "" : count + " " + noun + (count == 1 ? "" : "s");
+  }
+
+  String render() {
+    // Pick which diagnostics to print, errors first
+    HashSet<Diagnostic> shown = new HashSet<Diagnostic>();
+    for (ErrorType type : ErrorType.values()) {
+      for (Diagnostic diagnostic : diagnostics) {
+        if (diagnostic.type == type && (limit == 0 || shown.size() < limit)) {
+          shown.add(diagnostic);
+        }
+      }
+    }
+
+    // Print them grouped by file
+    StringBuilder builder = new StringBuilder();
+    for (ArrayList<Diagnostic> group : diagnosticsByFile.values()) {
+      for (Diagnostic diagnostic : group) {
+        if (!shown.contains(diagnostic)) {
+          continue;
+        }
+        String[] parts = diagnostic.error.description.split("\n", 2);
+        if (diagnostic.type == ErrorType.ERROR) {
+          builder.append(Globals.colorCode(Globals.RED)).append("Error: ");
+        } else {
+          builder.append(Globals.colorCode(Globals.YELLOW)).append("Warning: ");
+        }
+        builder.append(Globals.colorCode(Globals.RESET)).append(parts[0]);
+        builder.append(Globals.colorCode(Globals.GRAY)).append(diagnostic.location).append('\n');
+        if (parts.length > 1) {
+          builder.append(parts[1]).append('\n');
+        }
+        builder.append(Globals.colorCode(Globals.RESET));
+      }
+    }
+
+    // Summarize everything that wasn't printed
+    int hidden = diagnostics.size() - shown.size();
+    if (hidden > 0 || duplicateCount > 0) {
+      builder.append(Globals.colorCode(Globals.GRAY));
+      if (hidden > 0) {
+        builder.append("... and ").append(hidden).append(" more (").append(summary()).append(" in total)\n");
+      }
+      if (duplicateCount > 0) {
+        builder.append(count(duplicateCount, "duplicate")).append(" not shown\n");
+      }
+      builder.append(Globals.colorCode(Globals.RESET));
+    }
+    return builder.toString();
+  }
+}
+
+/**
+ * Shows notifications using terminal-notifier from a background thread so
+ * starting the notifier never slows down the build. Only the most recent
+ * notification is sent if more are requested while one is being started.
+ */
+class Notifier {
+  static final String TERMINAL_NOTIFIER_PATH = "../../../../../node_modules/terminal-notifier/terminal-notifier.js";
+
+  final AtomicReference<String[]> pendingCommand = new AtomicReference<String[]>();
+  final ExecutorService executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "gccjs-notifier");
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
+
+  void show(String text, String file, int line) {
+    String path = ClosureCompilerBuilder.class.getResource("ClosureCompilerBuilder.class").getPath();
+    path = new File(new File(path).getAbsoluteFile().getParent(), TERMINAL_NOTIFIER_PATH).getAbsolutePath();
+    pendingCommand.set(new String[] {
+      "node",
+      path,
+      "-title", "Google Closure Compiler",
+      "-group", "closure-compiler-builder",
+      "-message", text,
+      "-execute", ClosureCompilerBuilder.getEditorOpenCommand(file, line)
+    });
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        String[] command = pendingCommand.getAndSet(null);
+        if (command == null) {
+          return;
+        }
+        try {
+          Runtime.getRuntime().exec(command);
+        } catch (IOException e) {
+          // Fall back to a terminal beep if terminal-notifier fails
+          System.out.print("\007");
+          System.out.flush();
+        }
+      }
+    });
+  }
+}
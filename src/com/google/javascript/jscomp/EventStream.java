@@ -0,0 +1,107 @@
+package com.google.javascript.jscomp;
+
+import com.google.common.base.Charsets;
+import java.io.*;
+import java.net.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+import java.util.regex.*;
+import org.json.*;
+
+/**
+ * Writes build events as newline-delimited JSON to a file or to a TCP socket
+ * ("host:port") for editor plugins and dashboards. Events are queued and
+ * written by a background thread so a slow consumer never blocks the build.
+ * When the queue is full, events are dropped and a "dropped" event with the
+ * number of events that were lost is written before the next event, or as
+ * soon as the queue is empty or the stream is closed.
+ */
+class EventStream implements Runnable {
+  static final int CAPACITY = 4096;
+  static final Pattern SOCKET_TARGET = Pattern.compile("([^/\\\\]+):(\\d+)");
+  static final String END_OF_STREAM = "";
+
+  final BlockingQueue<String> queue = new ArrayBlockingQueue<String>(CAPACITY);
+  final AtomicInteger droppedCount = new AtomicInteger();
+  final Writer writer;
+  final Thread thread;
+  volatile boolean failed;
+
+  EventStream(Writer writer) {
+    this.writer = writer;
+    thread = new Thread(this, "gccjs-events");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  static EventStream open(String target) throws IOException {
+    Matcher matcher = SOCKET_TARGET.matcher(target);
+    OutputStream stream = matcher.matches() ?
+      new Socket(matcher.group(1), Integer.parseInt(matcher.group(2))).getOutputStream() :
+      new FileOutputStream(target);
+    return new EventStream(new BufferedWriter(new OutputStreamWriter(stream, Charsets.UTF_8)));
+  }
+
+  // Takes alternating keys and values, which must be valid JSON values
+  void emit(String type, Object... properties) {
+    if (failed) {
+      return;
+    }
+    JSONObject event = new JSONObject();
+    try {
+      event.put("type", type);
+      event.put("time", System.currentTimeMillis());
+      for (int i = 0; i + 1 < properties.length; i += 2) {
+        event.put((String)properties[i], properties[i + 1]);
+      }
+    } catch (JSONException e) {
+      return;
+    }
+    if (!queue.offer(event.toString())) {
+      droppedCount.incrementAndGet();
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        String line = queue.take();
+        if (line == END_OF_STREAM) {
+          break;
+        }
+        writeDropped();
+        writer.write(line);
+        writer.write('\n');
+        if (queue.isEmpty()) {
+          writeDropped();
+          writer.flush();
+        }
+      }
+      writeDropped();
+      writer.close();
+    } catch (IOException e) {
+      // The consumer went away, so stop queueing events
+      failed = true;
+      queue.clear();
+    } catch (InterruptedException e) {
+    }
+  }
+
+  void writeDropped() throws IOException {
+    int dropped = droppedCount.getAndSet(0);
+    if (dropped > 0) {
+      writer.write("{\"type\":\"dropped\",\"count\":" + dropped + "}\n");
+    }
+  }
+
+  // Waits a little while for queued events to be written
+  void close() {
+    try {
+      if (!failed && queue.offer(END_OF_STREAM, 1, TimeUnit.SECONDS)) {
+        thread.join(1000);
+      }
+    } catch (InterruptedException e) {
+    }
+  }
+}
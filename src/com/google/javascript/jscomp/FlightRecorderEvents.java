@@ -0,0 +1,80 @@
+package com.google.javascript.jscomp;
+
+import java.lang.reflect.*;
+
+/**
+ * Emits custom Java Flight Recorder events for builds, build phases, and
+ * compiler passes so slow builds in a recording can be tied to their causes.
+ * The events themselves live in FlightRecorderSupport under jfr/, which needs
+ * Java 11 to compile, so this class only reaches them by reflection and src
+ * still compiles on older toolchains. Without that class or without jdk.jfr
+ * nothing is recorded, and events are discarded as soon as they are created
+ * unless a recording has them enabled. The begin methods return null when
+ * there is nothing to record, and the end methods accept null.
+ */
+class FlightRecorderEvents {
+  static final String SUPPORT_CLASS = "com.google.javascript.jscomp.FlightRecorderSupport";
+
+  // Everything is off when beginBuild is null
+  static Method beginBuild;
+  static Method endBuild;
+  static Method beginPhase;
+  static Method endPhase;
+  static Method beginPass;
+  static Method endPass;
+
+  static {
+    try {
+      Class.forName("jdk.jfr.Event");
+      Class<?> support = Class.forName(SUPPORT_CLASS);
+      beginBuild = support.getDeclaredMethod("beginBuild", String.class);
+      endBuild = support.getDeclaredMethod("endBuild", Object.class, int.class, int.class, long.class, boolean.class);
+      beginPhase = support.getDeclaredMethod("beginPhase", String.class, String.class);
+      endPhase = support.getDeclaredMethod("endPhase", Object.class);
+      beginPass = support.getDeclaredMethod("beginPass", String.class, String.class);
+      endPass = support.getDeclaredMethod("endPass", Object.class, boolean.class);
+    } catch (Throwable t) {
+      beginBuild = null;
+    }
+  }
+
+  static Object invoke(Method method, Object... args) {
+    try {
+      return method.invoke(null, args);
+    } catch (IllegalAccessException e) {
+      throw new RuntimeException(e);
+    } catch (InvocationTargetException e) {
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  static Object beginBuild(String project) {
+    return beginBuild != null ? invoke(beginBuild, project) : null;
+  }
+
+  static void endBuild(Object event, int sourceCount, int externCount, long outputSize, boolean succeeded) {
+    if (event != null) {
+      invoke(endBuild, event, sourceCount, externCount, outputSize, succeeded);
+    }
+  }
+
+  static Object beginPhase(Phase phase, String project) {
+    return beginBuild != null ? invoke(beginPhase, phase.displayName(), project) : null;
+  }
+
+  static void endPhase(Object event) {
+    if (event != null) {
+      invoke(endPhase, event);
+    }
+  }
+
+  static Object beginPass(String pass, Phase phase) {
+    return beginBuild != null ? invoke(beginPass, pass, phase.displayName()) : null;
+  }
+
+  static void endPass(Object event, boolean changed) {
+    if (event != null) {
+      invoke(endPass, event, changed);
+    }
+  }
+}
@@ -0,0 +1,498 @@
+package com.google.javascript.jscomp;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The GLSL rewriting used by OptimizeWebGLPass, done with linear scans
+ * instead of regular expressions. This used to be a chain of regular
+ * expression replacements, and these functions produce exactly the same
+ * output as that chain did, quirks included (for example, "uniform float a;
+ * float b;" still merges into one uniform declaration), so the minified
+ * output of existing projects doesn't change.
+ */
+class GLSLMinifier {
+  // GLSL ES versions, see detectVersion()
+  static final int VERSION_UNKNOWN = 0;
+  static final int VERSION_100 = 100;
+  static final int VERSION_300 = 300;
+
+  static final String[] QUALIFIERS = { "uniform", "attribute", "varying", "const" };
+  static final String[] QUALIFIERS_300 = { "uniform", "in", "out", "attribute", "varying", "const" };
+
+  // Declarations with these qualifiers are shared between the shaders of a
+  // program, so their names have to be the same in both
+  static final List<String> LINKED_QUALIFIERS = Arrays.asList("uniform", "attribute", "varying");
+  static final List<String> LINKED_QUALIFIERS_300 = Arrays.asList("uniform", "in", "out", "attribute", "varying");
+
+  static final String[] TYPES = {
+    "float", "int", "bool", "mat2", "mat3", "mat4", "vec2", "vec3", "vec4", "ivec2", "ivec3",
+    "ivec4", "bvec2", "bvec3", "bvec4", "sampler2D", "samplerCube"
+  };
+
+  static final String[] TYPES_300 = {
+    "float", "int", "uint", "bool", "mat2", "mat3", "mat4", "mat2x2", "mat2x3", "mat2x4", "mat3x2",
+    "mat3x3", "mat3x4", "mat4x2", "mat4x3", "mat4x4", "vec2", "vec3", "vec4", "ivec2", "ivec3",
+    "ivec4", "uvec2", "uvec3", "uvec4", "bvec2", "bvec3", "bvec4", "sampler2D", "sampler3D",
+    "samplerCube", "sampler2DShadow", "samplerCubeShadow", "sampler2DArray", "sampler2DArrayShadow",
+    "isampler2D", "isampler3D", "isamplerCube", "isampler2DArray", "usampler2D", "usampler3D",
+    "usamplerCube", "usampler2DArray"
+  };
+
+  // Identifiers with these prefixes are built in and are never renamed
+  static final String[] BUILT_IN_PREFIXES = { "gl_", "GL_", "OES_", "EXT_", "WEBGL_", "ANGLE_", "__" };
+
+  // Enough for every shader permutation of a large project
+  static final int MAX_CACHED_SHADERS = 4096;
+
+  static final int NO_SPACE = 0;
+  static final int SPACE = 1;
+  static final int NEWLINE = 2;
+
+  // Shaders are independent until renaming, so they're normalized in parallel
+  static final ForkJoinPool pool = new ForkJoinPool();
+
+  // A shader after every stage except renaming, which needs all shaders
+  static class Normalized {
+    final String glsl;
+    final HashMap<String, Integer> names;
+    final int version;
+    final boolean complete; // Has main, so it's never joined with other constants
+    final HashSet<String> linked; // Names that may link to other shaders
+
+    Normalized(String glsl, HashMap<String, Integer> names, int version) {
+      ArrayList<GLSLOptimizer.Token> tokens = GLSLOptimizer.tokenize(glsl);
+      this.glsl = glsl;
+      this.names = names;
+      this.version = version;
+      complete = GLSLOptimizer.hasMain(tokens);
+      linked = findLinkedNames(tokens, version);
+    }
+  }
+
+  // Shaders rarely change between builds in watch mode, so normalized
+  // shaders are kept for the life of the process, keyed by the defines and
+  // the original text
+  static final LinkedHashMap<String, Normalized> cache = new LinkedHashMap<String, Normalized>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Normalized> eldest) {
+      return size() > MAX_CACHED_SHADERS;
+    }
+  };
+  static long cacheHits;
+  static long cacheMisses;
+
+  static Normalized normalize(String glsl, Map<String, String> defines, String definesKey) {
+    String key = definesKey.isEmpty() ? glsl : definesKey + '\0' + glsl;
+    synchronized (cache) {
+      Normalized normalized = cache.get(key);
+      if (normalized != null) {
+        cacheHits++;
+        return normalized;
+      }
+      cacheMisses++;
+    }
+    String minified = removeCommentsAndTightenSpaces(glsl);
+    minified = GLSLPreprocessor.preprocess(minified, defines);
+    int version = detectVersion(GLSLOptimizer.tokenize(minified));
+    minified = combineAdjacentVariableDeclarations(GLSLOptimizer.optimize(minified), version);
+    HashMap<String, Integer> names = new HashMap<String, Integer>();
+    findNames(minified, names);
+    Normalized normalized = new Normalized(minified, names, version);
+    synchronized (cache) {
+      cache.put(key, normalized);
+    }
+    return normalized;
+  }
+
+  // Splits the shaders in half until each task has a single shader
+  @SuppressWarnings("serial")
+  static class NormalizeTask extends RecursiveAction {
+    final String[] shaders;
+    final Map<String, String> defines;
+    final String definesKey;
+    final Normalized[] results;
+    final int start;
+    final int end;
+
+    NormalizeTask(String[] shaders, Map<String, String> defines, String definesKey, Normalized[] results, int start, int end) {
+      this.shaders = shaders;
+      this.defines = defines;
+      this.definesKey = definesKey;
+      this.results = results;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    protected void compute() {
+      if (end - start == 1) {
+        results[start] = normalize(shaders[start], defines, definesKey);
+      } else if (end - start > 1) {
+        int middle = (start + end) >>> 1;
+        invokeAll(new NormalizeTask(shaders, defines, definesKey, results, start, middle),
+          new NormalizeTask(shaders, defines, definesKey, results, middle, end));
+      }
+    }
+  }
+
+  // Results are in the same order as the shaders
+  static Normalized[] normalizeAll(String[] shaders, Map<String, String> defines) {
+    Normalized[] results = new Normalized[shaders.length];
+    pool.invoke(new NormalizeTask(shaders, defines, GLSLPreprocessor.describe(defines), results, 0, shaders.length));
+    return results;
+  }
+
+  // Returns the number of cache hits and misses since the last call
+  static long[] takeCacheCounts() {
+    synchronized (cache) {
+      long[] counts = { cacheHits, cacheMisses };
+      cacheHits = 0;
+      cacheMisses = 0;
+      return counts;
+    }
+  }
+
+  // Removes comments and unnecessary whitespace in one pass. Lines are
+  // joined except after preprocessor commands, runs of whitespace shrink to
+  // a single space or newline, and spaces are removed wherever they can't be
+  // needed, being careful about things like "a - --b".
+  static String removeCommentsAndTightenSpaces(String glsl) {
+    int n = glsl.length();
+    StringBuilder builder = new StringBuilder(n);
+    boolean[] unterminated = null; // Positions inside unterminated /* comments
+    int pending = NO_SPACE;
+    boolean lineStart = true; // Only spaces and tabs so far on this line
+    boolean preprocessor = false;
+
+    for (int i = 0; i < n; i++) {
+      char c = glsl.charAt(i);
+
+      // Comments are removed entirely, even from the middle of a token
+      if (c == '/' && i + 1 < n) {
+        char next = glsl.charAt(i + 1);
+        if (next == '*') {
+          int end = blockCommentEnd(glsl, i + 2, unterminated);
+          if (end != -1) {
+            i = end - 1;
+            continue;
+          }
+          if (unterminated == null) {
+            unterminated = new boolean[n];
+          }
+          markUnterminated(glsl, i + 2, unterminated);
+        } else if (next == '/') {
+          while (i + 1 < n && glsl.charAt(i + 1) != '\n') {
+            i++;
+          }
+          continue;
+        }
+      }
+
+      // Join lines, except after preprocessor commands
+      if (c == '\n') {
+        c = preprocessor ? '\n' : ' ';
+        lineStart = true;
+        preprocessor = false;
+      } else if (lineStart && c != ' ' && c != '\t') {
+        lineStart = false;
+        preprocessor = c == '#';
+      }
+
+      // Leading whitespace is trimmed
+      if (builder.length() == 0) {
+        if (c > ' ') {
+          builder.append(c);
+        }
+        continue;
+      }
+
+      // Shrink whitespace to a single space or newline
+      if (c == ' ' || c == '\t') {
+        if (pending == NO_SPACE) {
+          pending = SPACE;
+        }
+        continue;
+      }
+      if (c == '\r' || c == '\n') {
+        pending = NEWLINE;
+        continue;
+      }
+      if (pending == NEWLINE) {
+        builder.append('\n');
+      } else if (pending == SPACE && isSpaceNeeded(builder.charAt(builder.length() - 1), c)) {
+        builder.append(' ');
+      }
+      pending = NO_SPACE;
+      builder.append(c);
+    }
+
+    // Trailing whitespace and control characters are trimmed
+    int end = builder.length();
+    while (end > 0 && builder.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    builder.setLength(end);
+    return builder.toString();
+  }
+
+  static boolean isSymbol(char c) {
+    return ".,;:?|&^*/=!<>(){}[]".indexOf(c) != -1;
+  }
+
+  // Spaces are kept between words and between repeated "+" or "-"
+  static boolean isSpaceNeeded(char before, char after) {
+    return !isSymbol(before) && !isSymbol(after) &&
+      (before == '+' ? after == '+' : before == '-' ? after == '-' : after != '+' && after != '-');
+  }
+
+  // Returns the index after the "*/" that ends a comment whose body starts at
+  // start, or -1 if it never ends. A "*" always pairs with the character
+  // after it, so "/* **/" doesn't end at "*/".
+  static int blockCommentEnd(String glsl, int start, boolean[] unterminated) {
+    int n = glsl.length();
+    int i = start;
+    while (i < n) {
+      if (unterminated != null && unterminated[i]) {
+        return -1;
+      }
+      if (glsl.charAt(i) != '*') {
+        i++;
+      } else if (i + 1 == n) {
+        return -1;
+      } else if (glsl.charAt(i + 1) == '/') {
+        return i + 2;
+      } else {
+        i += 2;
+      }
+    }
+    return -1;
+  }
+
+  // Comments starting anywhere along a path that never ends won't end either,
+  // so remember the path to keep many unterminated comments linear
+  static void markUnterminated(String glsl, int start, boolean[] unterminated) {
+    int n = glsl.length();
+    for (int i = start; i < n && !unterminated[i]; i += glsl.charAt(i) == '*' ? 2 : 1) {
+      unterminated[i] = true;
+    }
+  }
+
+  // Shaders say which version they are with "#version 300 es". Without it, a
+  // shader that declares "in" or "out" variables must be getting its version
+  // from a header joined at runtime, and other shaders with main are ES 1.00.
+  // Anything else could be joined with either.
+  static int detectVersion(ArrayList<GLSLOptimizer.Token> tokens) {
+    int depth = 0;
+    for (GLSLOptimizer.Token token : tokens) {
+      if (token.kind == GLSLOptimizer.DIRECTIVE) {
+        String[] words = token.text.substring(1).trim().split("[ \t]+");
+        if (words[0].equals("version")) {
+          return words.length > 1 && words[1].matches("[0-9]{1,4}") && Integer.parseInt(words[1]) >= 300 ? VERSION_300 : VERSION_100;
+        }
+      } else if (token.is("(") || token.is("[") || token.is("{")) {
+        depth++;
+      } else if (token.is(")") || token.is("]") || token.is("}")) {
+        depth--;
+      } else if (depth == 0 && (token.text.equals("in") || token.text.equals("out") || token.text.equals("layout"))) {
+        return VERSION_300;
+      }
+    }
+    return GLSLOptimizer.hasMain(tokens) ? VERSION_100 : VERSION_UNKNOWN;
+  }
+
+  static String combineAdjacentVariableDeclarations(String glsl) {
+    return combineAdjacentVariableDeclarations(glsl, VERSION_100);
+  }
+
+  // Merges declarations like "float a;float b;" into "float a,b;". This
+  // assumes removeCommentsAndTightenSpaces() has already been run. Each
+  // statement is merged into the one before it as long as possible, and a
+  // declaration may start after any "{" or "}" in the previous statement.
+  static String combineAdjacentVariableDeclarations(String glsl, int version) {
+    String[] qualifiers = version == VERSION_100 ? QUALIFIERS : QUALIFIERS_300;
+    String[] types = version == VERSION_100 ? TYPES : TYPES_300;
+    boolean strict = version != VERSION_100;
+    String[] statements = glsl.split(";", -1);
+    StringBuilder builder = new StringBuilder(glsl.length());
+    StringBuilder current = new StringBuilder(statements[0]);
+    for (int i = 1; i < statements.length; i++) {
+      String next = statements[i];
+      String rest = i + 1 < statements.length ? mergeableRest(current, next, qualifiers, types, strict) : null;
+      if (rest != null) {
+        current.append(',').append(rest);
+      } else {
+        builder.append(current).append(';');
+        current.setLength(0);
+        current.append(next);
+      }
+    }
+    builder.append(current);
+    return builder.toString();
+  }
+
+  // Returns what's left of the next statement after its qualifier and type
+  // if it can be merged into the current statement, or null otherwise. ES 1.00
+  // keeps the quirks of the old regular expression, but in strict mode the
+  // qualifiers must match and functions are never merged into declarations.
+  static String mergeableRest(CharSequence current, String next, String[] qualifiers, String[] types, boolean strict) {
+    for (int i = 0; i < current.length(); i++) {
+      if (i > 0) {
+        char c = current.charAt(i - 1);
+        if (c != '{' && c != '}') {
+          continue;
+        }
+      }
+
+      // Look for a declaration with at least one character after the type
+      String qualifier = prefixAt(current, i, qualifiers);
+      String type = prefixAt(current, qualifier != null ? i + qualifier.length() + 1 : i, types);
+      if (type == null || i + (qualifier != null ? qualifier.length() + 1 : 0) + type.length() + 1 >= current.length()) {
+        continue;
+      }
+
+      // The next statement may leave out the qualifier
+      String prefix = qualifier + " " + type + " ";
+      String rest = null;
+      if (qualifier != null && next.startsWith(prefix) && next.length() > prefix.length()) {
+        rest = next.substring(prefix.length());
+      } else if ((!strict || qualifier == null) && next.startsWith(type + " ") && next.length() > type.length() + 1) {
+        rest = next.substring(type.length() + 1);
+      }
+      if (rest != null && (!strict || !isFunction(rest))) {
+        return rest;
+      }
+    }
+    return null;
+  }
+
+  static boolean isFunction(String declaration) {
+    int end = 0;
+    while (end < declaration.length() && isIdentifierCharacter(declaration.charAt(end))) {
+      end++;
+    }
+    return end < declaration.length() && declaration.charAt(end) == '(';
+  }
+
+  // Returns the word from words that is followed by a space at index i
+  static String prefixAt(CharSequence text, int i, String[] words) {
+    for (String word : words) {
+      int end = i + word.length();
+      if (end < text.length() && text.charAt(end) == ' ' && regionMatches(text, i, word)) {
+        return word;
+      }
+    }
+    return null;
+  }
+
+  static boolean regionMatches(CharSequence text, int i, String word) {
+    for (int j = 0; j < word.length(); j++) {
+      if (text.charAt(i + j) != word.charAt(j)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  static boolean isWordCharacter(char c) {
+    return c == '_' || Character.isLetterOrDigit(c);
+  }
+
+  static boolean isIdentifierCharacter(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '_';
+  }
+
+  // Returns the end of the identifier starting at i, or -1 if there isn't
+  // one. Identifiers include a leading "#" or "." since those are never
+  // renamed, and built-in identifiers are skipped.
+  static int identifierEnd(String glsl, int i) {
+    int n = glsl.length();
+    int start = i;
+    char c = glsl.charAt(i);
+    if (c == '#' || c == '.') {
+      start++;
+    } else if (i > 0 && isWordCharacter(glsl.charAt(i - 1))) {
+      return -1;
+    }
+    if (start == n) {
+      return -1;
+    }
+    c = glsl.charAt(start);
+    if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_')) {
+      return -1;
+    }
+    for (String prefix : BUILT_IN_PREFIXES) {
+      if (glsl.startsWith(prefix, start)) {
+        return -1;
+      }
+    }
+    int end = start + 1;
+    while (end < n && isIdentifierCharacter(glsl.charAt(end))) {
+      end++;
+    }
+    return end < n && isWordCharacter(glsl.charAt(end)) ? -1 : end;
+  }
+
+  // ES 3.00 keywords are counted like any other name, since whether they're
+  // reserved depends on every constant sharing the renaming
+  static void findNames(String glsl, HashMap<String, Integer> names) {
+    for (int i = 0, n = glsl.length(); i < n; i++) {
+      int end = identifierEnd(glsl, i);
+      if (end != -1) {
+        String name = glsl.substring(i, end);
+        if (!OptimizeWebGLPass.isReserved(name)) {
+          Integer count = names.get(name);
+          names.put(name, count == null ? 1 : count + 1);
+        }
+        i = end - 1;
+      }
+    }
+  }
+
+  // Every name in a uniform, attribute, varying, in or out declaration,
+  // including the types and array sizes, since those must match in the other
+  // shader. Parameter qualifiers inside parentheses don't count.
+  static HashSet<String> findLinkedNames(ArrayList<GLSLOptimizer.Token> tokens, int version) {
+    List<String> qualifiers = version == VERSION_100 ? LINKED_QUALIFIERS : LINKED_QUALIFIERS_300;
+    HashSet<String> linked = new HashSet<String>();
+    int start = 0;
+    int depth = 0;
+    boolean declaration = false;
+    for (int i = 0; i < tokens.size(); i++) {
+      GLSLOptimizer.Token token = tokens.get(i);
+      if (token.is("(")) {
+        depth++;
+      } else if (token.is(")")) {
+        depth--;
+      } else if (depth == 0 && token.kind == GLSLOptimizer.WORD && qualifiers.contains(token.text)) {
+        declaration = true;
+      }
+      boolean last = i + 1 == tokens.size();
+      if (token.is(";") || token.is("{") || token.is("}") || token.kind == GLSLOptimizer.DIRECTIVE || last) {
+        if (declaration) {
+          GLSLOptimizer.addReferences(tokens, start, i, linked);
+        }
+        start = i + 1;
+        declaration = false;
+      }
+    }
+    return linked;
+  }
+
+  static String replaceNames(String glsl, HashMap<String, String> renaming) {
+    StringBuilder builder = new StringBuilder(glsl.length());
+    int copied = 0;
+    for (int i = 0, n = glsl.length(); i < n; i++) {
+      int end = identifierEnd(glsl, i);
+      if (end != -1) {
+        String name = glsl.substring(i, end);
+        builder.append(glsl, copied, i);
+        builder.append(OptimizeWebGLPass.isReserved(name) ? name : renaming.get(name));
+        copied = end;
+        i = end - 1;
+      }
+    }
+    builder.append(glsl, copied, glsl.length());
+    return builder.toString();
+  }
+}
@@ -0,0 +1,774 @@
+package com.google.javascript.jscomp;
+
+import java.math.BigDecimal;
+import java.util.*;
+import java.util.regex.*;
+
+/**
+ * Shrinks complete shaders (ones with "void main(") before they are renamed.
+ * Functions and global declarations that main can't reach are removed,
+ * arithmetic on literals is folded and const scalars that are used once are
+ * inlined. Shaders without main are usually pieces that get joined with
+ * other constants at runtime, so they only get the local rewrites: float
+ * literals, constructors like "vec4(x,x,x,x)" and redundant parentheses are
+ * written in their shortest form.
+ *
+ * The input must already have been through
+ * GLSLMinifier.removeCommentsAndTightenSpaces(). There is no type checker, so
+ * anything that isn't understood is left alone:
+ * - Preprocessor commands are always kept, and every name in them counts as
+ *   used.
+ * - Attributes are always kept.
+ * - Varyings are only removed from fragment shaders (shaders that don't use
+ *   gl_Position), because a vertex shader must declare every varying that
+ *   the fragment shader reads.
+ */
+class GLSLOptimizer {
+  static final int WORD = 0;
+  static final int NUMBER = 1;
+  static final int SYMBOL = 2;
+  static final int DIRECTIVE = 3; // A whole preprocessor command
+
+  static final Pattern INT_LITERAL = Pattern.compile("0|[1-9][0-9]*");
+  static final Pattern FLOAT_LITERAL = Pattern.compile(
+    "([0-9]+\\.[0-9]*|\\.[0-9]+)([eE][+-]?[0-9]+)?|[0-9]+[eE][+-]?[0-9]+");
+
+  // Folded integers must fit in the smallest highp int allowed by GLSL ES
+  static final int MAX_FOLDED_INT = 32767;
+
+  static class Token {
+    final int kind;
+    final int start;
+    final int end; // Includes the newline after a preprocessor command
+    final String text;
+
+    Token(int kind, int start, int end, String text) {
+      this.kind = kind;
+      this.start = start;
+      this.end = end;
+      this.text = text;
+    }
+
+    boolean is(String symbol) {
+      return kind == SYMBOL && text.equals(symbol);
+    }
+  }
+
+  // A preprocessor command, declaration or function definition at the top
+  // level of a shader
+  static class Item {
+    int first; // Token indices, inclusive
+    int last;
+    boolean removable;
+    boolean reached;
+    boolean constant;
+    ArrayList<String> names = new ArrayList<String>(); // Declared names
+  }
+
+  // Vector constructors that fill every component from a single scalar
+  static final HashMap<String, Integer> VECTOR_SIZES = new HashMap<String, Integer>() {{
+    put("vec2", 2);
+    put("vec3", 3);
+    put("vec4", 4);
+    put("ivec2", 2);
+    put("ivec3", 3);
+    put("ivec4", 4);
+    put("bvec2", 2);
+    put("bvec3", 3);
+    put("bvec4", 4);
+    put("uvec2", 2);
+    put("uvec3", 3);
+    put("uvec4", 4);
+  }};
+
+  static String optimize(String glsl) {
+    if (hasMain(tokenize(glsl))) {
+      glsl = removeUnreachable(glsl);
+      glsl = foldConstants(glsl);
+      glsl = inlineConstants(glsl);
+      glsl = foldConstants(glsl);
+      glsl = removeUnreachable(glsl);
+    }
+    return shorten(glsl);
+  }
+
+  static boolean isWordStart(char c) {
+    return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_';
+  }
+
+  static boolean isWordPart(char c) {
+    return isWordStart(c) || c >= '0' && c <= '9';
+  }
+
+  static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  static ArrayList<Token> tokenize(String glsl) {
+    ArrayList<Token> tokens = new ArrayList<Token>();
+    int n = glsl.length();
+    int i = 0;
+    while (i < n) {
+      char c = glsl.charAt(i);
+      int start = i;
+      if (c <= ' ') {
+        i++;
+        continue;
+      }
+
+      // Preprocessor commands don't always start a line after tightening
+      if (c == '#') {
+        while (i < n && glsl.charAt(i) != '\n') {
+          i++;
+        }
+        String text = glsl.substring(start, i);
+        if (i < n) {
+          i++;
+        }
+        tokens.add(new Token(DIRECTIVE, start, i, text));
+        continue;
+      }
+
+      int kind;
+      if (isWordStart(c)) {
+        kind = WORD;
+        while (i < n && isWordPart(glsl.charAt(i))) {
+          i++;
+        }
+      } else if (isDigit(c) || c == '.' && i + 1 < n && isDigit(glsl.charAt(i + 1))) {
+        kind = NUMBER;
+        boolean hex = c == '0' && i + 1 < n && (glsl.charAt(i + 1) == 'x' || glsl.charAt(i + 1) == 'X');
+        i++;
+        while (i < n) {
+          char d = glsl.charAt(i);
+          char previous = glsl.charAt(i - 1);
+          if (isWordPart(d) || d == '.' || !hex && (d == '+' || d == '-') && (previous == 'e' || previous == 'E')) {
+            i++;
+          } else {
+            break;
+          }
+        }
+      } else {
+        kind = SYMBOL;
+        i++;
+      }
+      tokens.add(new Token(kind, start, i, glsl.substring(start, i)));
+    }
+    return tokens;
+  }
+
+  static boolean hasMain(ArrayList<Token> tokens) {
+    for (int i = 0; i + 2 < tokens.size(); i++) {
+      if (tokens.get(i).text.equals("void") && tokens.get(i + 1).text.equals("main") && tokens.get(i + 2).is("(")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Names used by the tokens from first to last, not counting fields and
+  // swizzles after "."
+  static void addReferences(ArrayList<Token> tokens, int first, int last, Collection<String> names) {
+    for (int i = first; i <= last; i++) {
+      Token token = tokens.get(i);
+      if (token.kind == WORD && (i == 0 || !tokens.get(i - 1).is("."))) {
+        names.add(token.text);
+      } else if (token.kind == DIRECTIVE) {
+        addDirectiveReferences(token.text, names);
+      }
+    }
+  }
+
+  static void addDirectiveReferences(String directive, Collection<String> names) {
+    for (int i = 1, n = directive.length(); i < n; i++) {
+      if (isWordStart(directive.charAt(i)) && !isWordPart(directive.charAt(i - 1))) {
+        int start = i;
+        while (i < n && isWordPart(directive.charAt(i))) {
+          i++;
+        }
+        names.add(directive.substring(start, i));
+      }
+    }
+  }
+
+  static int matchingBrace(ArrayList<Token> tokens, int open) {
+    int depth = 0;
+    for (int i = open; i < tokens.size(); i++) {
+      if (tokens.get(i).is("{")) {
+        depth++;
+      } else if (tokens.get(i).is("}") && --depth == 0) {
+        return i;
+      }
+    }
+    return tokens.size() - 1;
+  }
+
+  static ArrayList<Item> parseItems(ArrayList<Token> tokens, boolean fragmentShader) {
+    ArrayList<Item> items = new ArrayList<Item>();
+    int i = 0;
+    while (i < tokens.size()) {
+      Item item = new Item();
+      item.first = i;
+      if (tokens.get(i).kind == DIRECTIVE) {
+        item.last = i;
+      } else {
+        // Find the end of the declaration or function body
+        int depth = 0;
+        int j = i;
+        boolean function = false;
+        for (; j < tokens.size(); j++) {
+          Token token = tokens.get(j);
+          if (token.is("(") || token.is("[")) {
+            depth++;
+          } else if (token.is(")") || token.is("]") || token.is("}")) {
+            depth--;
+          } else if (token.is("{")) {
+            if (depth == 0 && j > i && tokens.get(j - 1).is(")")) {
+              function = true;
+              j = matchingBrace(tokens, j);
+              break;
+            }
+            depth++;
+          } else if (token.is(";") && depth == 0) {
+            break;
+          }
+        }
+        item.last = Math.min(j, tokens.size() - 1);
+        if (j < tokens.size()) {
+          classify(tokens, item, function, fragmentShader);
+        }
+      }
+      items.add(item);
+      i = item.last + 1;
+    }
+    return items;
+  }
+
+  // Decides whether an item can be removed and what names it declares.
+  // Anything unusual is kept.
+  static void classify(ArrayList<Token> tokens, Item item, boolean function, boolean fragmentShader) {
+    // Leading words are qualifiers, then the type, then a name
+    int words = 0;
+    while (item.first + words <= item.last && tokens.get(item.first + words).kind == WORD) {
+      words++;
+    }
+    if (words < 2) {
+      return;
+    }
+    Token afterWords = tokens.get(item.first + words);
+    String name = tokens.get(item.first + words - 1).text;
+
+    // Functions and prototypes
+    if (afterWords.is("(")) {
+      if (function ? !name.equals("main") : tokens.get(item.last).is(";")) {
+        item.removable = true;
+        item.names.add(name);
+      }
+      return;
+    }
+    if (function) {
+      return;
+    }
+
+    // Variables, but not structs, precision statements or anything else
+    String storage = null;
+    for (int i = item.first; i < item.first + words - 2; i++) {
+      String qualifier = tokens.get(i).text;
+      if (qualifier.equals("lowp") || qualifier.equals("mediump") || qualifier.equals("highp")) {
+        continue;
+      }
+      if (storage != null || !(qualifier.equals("uniform") || qualifier.equals("varying") || qualifier.equals("const"))) {
+        return;
+      }
+      storage = qualifier;
+    }
+    String type = tokens.get(item.first + words - 2).text;
+    if (type.equals("precision") || type.equals("struct") || type.equals("invariant") ||
+        storage != null && storage.equals("varying") && !fragmentShader) {
+      return;
+    }
+
+    // Every declarator starts with a name after a comma
+    int depth = 0;
+    item.names.add(name);
+    for (int i = item.first + words; i < item.last; i++) {
+      Token token = tokens.get(i);
+      if (token.is("(") || token.is("[")) {
+        depth++;
+      } else if (token.is(")") || token.is("]")) {
+        depth--;
+      } else if (token.is("{") || token.is("}")) {
+        item.names.clear();
+        return;
+      } else if (token.is(",") && depth == 0) {
+        if (tokens.get(i + 1).kind != WORD) {
+          item.names.clear();
+          return;
+        }
+        item.names.add(tokens.get(i + 1).text);
+      }
+    }
+    item.removable = true;
+    item.constant = "const".equals(storage);
+  }
+
+  static boolean isFragmentShader(ArrayList<Token> tokens) {
+    for (Token token : tokens) {
+      if (token.kind == WORD && token.text.equals("gl_Position")) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Keeps everything that can't be removed and everything it uses
+  static String removeUnreachable(String glsl) {
+    ArrayList<Token> tokens = tokenize(glsl);
+    ArrayList<Item> items = parseItems(tokens, isFragmentShader(tokens));
+    HashMap<String, ArrayList<Item>> declarations = new HashMap<String, ArrayList<Item>>();
+    ArrayList<String> pending = new ArrayList<String>();
+    for (Item item : items) {
+      if (!item.removable) {
+        item.reached = true;
+        addReferences(tokens, item.first, item.last, pending);
+        continue;
+      }
+      for (String name : item.names) {
+        ArrayList<Item> list = declarations.get(name);
+        if (list == null) {
+          list = new ArrayList<Item>();
+          declarations.put(name, list);
+        }
+        list.add(item);
+      }
+    }
+
+    HashSet<String> seen = new HashSet<String>();
+    while (!pending.isEmpty()) {
+      String name = pending.remove(pending.size() - 1);
+      if (!seen.add(name) || !declarations.containsKey(name)) {
+        continue;
+      }
+      for (Item item : declarations.get(name)) {
+        if (!item.reached) {
+          item.reached = true;
+          addReferences(tokens, item.first, item.last, pending);
+        }
+      }
+    }
+
+    // Keep the whitespace before each item since it may be a newline
+    StringBuilder builder = new StringBuilder(glsl.length());
+    int previousEnd = 0;
+    for (Item item : items) {
+      int end = tokens.get(item.last).end;
+      if (item.reached) {
+        builder.append(glsl, previousEnd, end);
+      }
+      previousEnd = end;
+    }
+    return builder.toString().trim();
+  }
+
+  static boolean isIntLiteral(String text) {
+    return INT_LITERAL.matcher(text).matches();
+  }
+
+  static boolean isFloatLiteral(String text) {
+    return FLOAT_LITERAL.matcher(text).matches();
+  }
+
+  static String formatFloat(float value) {
+    return Float.toString(value).replace('E', 'e');
+  }
+
+  // Returns the folded literal, or null if it can't be folded exactly
+  static String fold(String left, char operator, String right) {
+    if (isIntLiteral(left) && isIntLiteral(right)) {
+      long a;
+      long b;
+      try {
+        a = Long.parseLong(left);
+        b = Long.parseLong(right);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+      if (a > MAX_FOLDED_INT || b > MAX_FOLDED_INT || operator == '/' && b == 0) {
+        return null;
+      }
+      long result = operator == '+' ? a + b : operator == '-' ? a - b : operator == '*' ? a * b : a / b;
+      return Math.abs(result) <= MAX_FOLDED_INT ? Long.toString(result) : null;
+    }
+    if (isFloatLiteral(left) && isFloatLiteral(right)) {
+      float a = Float.parseFloat(left);
+      float b = Float.parseFloat(right);
+      if (Float.isInfinite(a) || Float.isInfinite(b) || operator == '/' && b == 0) {
+        return null;
+      }
+      float result = operator == '+' ? a + b : operator == '-' ? a - b : operator == '*' ? a * b : a / b;
+      return Float.isInfinite(result) || Float.isNaN(result) ? null : formatFloat(result);
+    }
+    return null;
+  }
+
+  // Nothing before these binds tighter than any arithmetic operator
+  static boolean isLooseBefore(Token token) {
+    return token == null || token.kind == WORD && token.text.equals("return") ||
+      token.kind == SYMBOL && "(,=[?:{;<>&|^".indexOf(token.text.charAt(0)) != -1;
+  }
+
+  // Parentheses after these are a call, constructor or something invalid
+  static boolean isCallBefore(Token token) {
+    return token != null && (token.kind == WORD && !token.text.equals("return") ||
+      token.kind == NUMBER || token.is(")") || token.is("]") || token.is("."));
+  }
+
+  // Folds "2.0*3.0" into "6.0" and "(6.0)" into "6.0" wherever operator
+  // precedence guarantees the same result
+  static String foldConstants(String glsl) {
+    while (true) {
+      ArrayList<Token> tokens = tokenize(glsl);
+      StringBuilder builder = new StringBuilder(glsl.length());
+      int copied = 0;
+      for (int i = 0; i + 2 < tokens.size(); i++) {
+        Token before = i > 0 ? tokens.get(i - 1) : null;
+        Token first = tokens.get(i);
+        Token middle = tokens.get(i + 1);
+        Token last = tokens.get(i + 2);
+        String replacement = null;
+
+        // Parentheses around a literal, but not a call or constructor
+        if (first.is("(") && middle.kind == NUMBER && last.is(")") && !isCallBefore(before) &&
+            !(i + 3 < tokens.size() && tokens.get(i + 3).is("."))) {
+          replacement = middle.text;
+        }
+
+        // Arithmetic on two literals of the same type
+        else if (first.kind == NUMBER && middle.kind == SYMBOL && "+-*/".indexOf(middle.text.charAt(0)) != -1 && last.kind == NUMBER) {
+          char operator = middle.text.charAt(0);
+          boolean additive = operator == '+' || operator == '-';
+          Token after = i + 3 < tokens.size() ? tokens.get(i + 3) : null;
+          boolean safeBefore = isLooseBefore(before) || !additive && (before.is("+") || before.is("-"));
+          boolean safeAfter = !additive || after == null || !(after.is("*") || after.is("/") || after.is("%"));
+          if (safeBefore && safeAfter) {
+            replacement = fold(first.text, operator, last.text);
+          }
+        }
+
+        if (replacement == null) {
+          continue;
+        }
+        builder.append(glsl, copied, first.start);
+
+        // Don't join "return" with the literal or "-" with a negative literal
+        char previous = builder.length() > 0 ? builder.charAt(builder.length() - 1) : ' ';
+        if (replacement.startsWith("-") && (previous == '-' || previous == '+')) {
+          builder.append(glsl, first.start, last.end);
+        } else {
+          builder.append(isWordPart(previous) ? " " : "").append(replacement);
+        }
+        copied = last.end;
+        i += 2;
+      }
+      if (copied == 0) {
+        return glsl;
+      }
+      builder.append(glsl, copied, glsl.length());
+      String folded = builder.toString();
+      if (folded.equals(glsl)) {
+        return glsl;
+      }
+      glsl = folded;
+    }
+  }
+
+  // Replaces the only use of a const scalar with its value and removes the
+  // declaration
+  static String inlineConstants(String glsl) {
+    ArrayList<Token> tokens = tokenize(glsl);
+    ArrayList<Item> items = parseItems(tokens, false);
+
+    // Count uses outside of each declaration
+    HashMap<String, Integer> uses = new HashMap<String, Integer>();
+    HashMap<String, Integer> lastUse = new HashMap<String, Integer>();
+    HashSet<String> inDirectives = new HashSet<String>();
+    for (int i = 0; i < tokens.size(); i++) {
+      Token token = tokens.get(i);
+      if (token.kind == DIRECTIVE) {
+        addDirectiveReferences(token.text, inDirectives);
+      } else if (token.kind == WORD && (i == 0 || !tokens.get(i - 1).is("."))) {
+        Integer count = uses.get(token.text);
+        uses.put(token.text, count == null ? 1 : count + 1);
+        lastUse.put(token.text, i);
+      }
+    }
+
+    // Edits are token ranges mapped to replacement text
+    TreeMap<Integer, Object[]> edits = new TreeMap<Integer, Object[]>();
+    for (Item item : items) {
+      if (!item.constant || item.names.size() != 1) {
+        continue;
+      }
+
+      // Only "const float NAME=1.0;", "NAME=-1.0" or "NAME=true"
+      String name = item.names.get(0);
+      int equals = item.first;
+      while (equals < item.last && !tokens.get(equals).is("=")) {
+        equals++;
+      }
+      if (equals == item.last || !tokens.get(equals - 1).text.equals(name)) {
+        continue;
+      }
+      boolean negative = tokens.get(equals + 1).is("-");
+      if (equals + (negative ? 3 : 2) != item.last) {
+        continue;
+      }
+      Token value = tokens.get(equals + (negative ? 2 : 1));
+      boolean literal = value.kind == NUMBER && (isIntLiteral(value.text) || isFloatLiteral(value.text)) ||
+        !negative && (value.text.equals("true") || value.text.equals("false"));
+      if (!literal) {
+        continue;
+      }
+
+      // The declaration itself is one use, and the other must be a plain read
+      if (!uses.get(name).equals(2) || inDirectives.contains(name)) {
+        continue;
+      }
+      int use = lastUse.get(name);
+      if (use <= item.last) {
+        continue;
+      }
+      Token before = tokens.get(use - 1);
+      Token after = use + 1 < tokens.size() ? tokens.get(use + 1) : null;
+      if (before.kind == NUMBER || before.kind == WORD && !before.text.equals("return") ||
+          after != null && (after.is("(") || after.is("=") && !(use + 2 < tokens.size() && tokens.get(use + 2).is("=")))) {
+        continue;
+      }
+
+      String text = (negative ? "-" : "") + value.text;
+      if (negative && !(before.kind == SYMBOL && "(,=[?:".indexOf(before.text.charAt(0)) != -1)) {
+        text = "(" + text + ")";
+      }
+      edits.put(tokens.get(item.first).start, new Object[] { tokens.get(item.last).end, "" });
+      edits.put(tokens.get(use).start, new Object[] { tokens.get(use).end, text });
+    }
+
+    if (edits.isEmpty()) {
+      return glsl;
+    }
+    StringBuilder builder = new StringBuilder(glsl.length());
+    int copied = 0;
+    for (Map.Entry<Integer, Object[]> edit : edits.entrySet()) {
+      builder.append(glsl, copied, edit.getKey());
+      builder.append((String)edit.getValue()[1]);
+      copied = (Integer)edit.getValue()[0];
+    }
+    builder.append(glsl, copied, glsl.length());
+    return builder.toString().trim();
+  }
+
+  // Writes the exact same decimal value with as few characters as possible,
+  // so "0.0" becomes "0.", "0.50" becomes ".5" and "100.0" becomes "1e2"
+  static String shortestFloat(String text) {
+    BigDecimal value = new BigDecimal(text).stripTrailingZeros();
+    if (value.signum() == 0) {
+      return "0.";
+    }
+    String digits = value.unscaledValue().toString();
+    int exponent = -value.scale();
+    String scientific = digits + "e" + exponent;
+    if (exponent > scientific.length() || -exponent > digits.length() + scientific.length()) {
+      return scientific;
+    }
+    StringBuilder plain = new StringBuilder(digits);
+    if (exponent >= 0) {
+      for (int i = 0; i < exponent; i++) {
+        plain.append('0');
+      }
+      plain.append('.');
+    } else {
+      int point = digits.length() + exponent;
+      for (int i = point; i < 0; i++) {
+        plain.insert(0, '0');
+      }
+      plain.insert(Math.max(0, point), '.');
+    }
+    String shortest = scientific.length() < plain.length() ? scientific : plain.toString();
+    return shortest.length() < text.length() ? shortest : text;
+  }
+
+  static int[] matchParentheses(ArrayList<Token> tokens) {
+    int[] matching = new int[tokens.size()];
+    Arrays.fill(matching, -1);
+    ArrayList<Integer> open = new ArrayList<Integer>();
+    for (int i = 0; i < tokens.size(); i++) {
+      if (tokens.get(i).is("(")) {
+        open.add(i);
+      } else if (tokens.get(i).is(")") && !open.isEmpty()) {
+        int j = open.remove(open.size() - 1);
+        matching[i] = j;
+        matching[j] = i;
+      }
+    }
+    return matching;
+  }
+
+  // Returns the ranges of the arguments between two parentheses, or null if
+  // an argument contains anything but names, literals, fields and swizzles
+  static ArrayList<int[]> simpleArguments(ArrayList<Token> tokens, int open, int close) {
+    ArrayList<int[]> arguments = new ArrayList<int[]>();
+    int start = open + 1;
+    for (int i = open + 1; i <= close; i++) {
+      Token token = tokens.get(i);
+      if (i == close || token.is(",")) {
+        if (i == start) {
+          return null;
+        }
+        arguments.add(new int[] { start, i });
+        start = i + 1;
+      } else if (!(token.kind == WORD || token.kind == NUMBER || token.is(".") || token.is("-") && i == start)) {
+        return null;
+      }
+    }
+    return arguments;
+  }
+
+  static boolean hasTopLevelComma(ArrayList<Token> tokens, int open, int close) {
+    int depth = 0;
+    for (int i = open + 1; i < close; i++) {
+      Token token = tokens.get(i);
+      if (token.is("(") || token.is("[")) {
+        depth++;
+      } else if (token.is(")") || token.is("]")) {
+        depth--;
+      } else if (token.is(",") && depth == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // Decides if the parentheses from open to close can go without changing
+  // how the expression inside them groups
+  static boolean isRedundant(ArrayList<Token> tokens, int open, int close) {
+    Token before = open > 0 ? tokens.get(open - 1) : null;
+    Token after = close + 1 < tokens.size() ? tokens.get(close + 1) : null;
+    if (before == null || isCallBefore(before)) {
+      return false;
+    }
+
+    // A name or literal, maybe with fields or swizzles
+    boolean primary = tokens.get(open + 1).kind == WORD || tokens.get(open + 1).kind == NUMBER;
+    for (int i = open + 2; i < close && primary; i += 2) {
+      primary = tokens.get(i).is(".") && i + 1 < close && tokens.get(i + 1).kind == WORD;
+    }
+    if (primary) {
+      return true;
+    }
+
+    // A negative literal, as long as that doesn't make "--" or "+-"
+    if (close == open + 3 && tokens.get(open + 1).is("-") && tokens.get(open + 2).kind == NUMBER) {
+      return !before.is("-") && !before.is("+") && (after == null || !after.is(".") && !after.is("["));
+    }
+
+    // A whole argument, assignment value or return value
+    if (hasTopLevelComma(tokens, open, close) || after == null || !(after.is(")") || after.is(",") || after.is(";"))) {
+      return false;
+    }
+    if (before.is("(") || before.is(",") || before.kind == WORD) {
+      return true;
+    }
+    if (before.is("=")) {
+      Token operator = open > 1 ? tokens.get(open - 2) : null;
+      return operator == null || !(operator.is("=") || operator.is("!") || operator.is("<") || operator.is(">"));
+    }
+    return false;
+  }
+
+  static String shorten(String glsl) {
+    String previous;
+    do {
+      previous = glsl;
+      glsl = shortenOnce(glsl);
+    } while (!glsl.equals(previous));
+    return glsl;
+  }
+
+  // Removing parentheses can expose more, so this runs until nothing changes
+  static String shortenOnce(String glsl) {
+    ArrayList<Token> tokens = tokenize(glsl);
+    int n = tokens.size();
+    String[] texts = new String[n];
+    for (int i = 0; i < n; i++) {
+      Token token = tokens.get(i);
+      texts[i] = token.kind == DIRECTIVE ? glsl.substring(token.start, token.end) :
+        token.kind == NUMBER && isFloatLiteral(token.text) ? shortestFloat(token.text) : token.text;
+    }
+    int[] matching = matchParentheses(tokens);
+
+    // "vec4(x,x,x,x)" is "vec4(x)"
+    for (int i = 0; i + 1 < n; i++) {
+      Integer size = VECTOR_SIZES.get(tokens.get(i).text);
+      int close = matching[i + 1];
+      if (size == null || !tokens.get(i + 1).is("(") || close == -1 || i > 0 && tokens.get(i - 1).is(".")) {
+        continue;
+      }
+      ArrayList<int[]> arguments = simpleArguments(tokens, i + 1, close);
+      if (arguments == null || arguments.size() != size) {
+        continue;
+      }
+      boolean same = true;
+      for (int[] argument : arguments) {
+        same &= argumentText(texts, argument).equals(argumentText(texts, arguments.get(0)));
+      }
+      if (same) {
+        for (int j = arguments.get(0)[1]; j < close; j++) {
+          texts[j] = "";
+        }
+      }
+    }
+
+    for (int i = 0; i < n; i++) {
+      if (matching[i] > i && !texts[i].isEmpty() && isRedundant(tokens, i, matching[i])) {
+        texts[i] = "";
+        texts[matching[i]] = "";
+      }
+    }
+
+    // Spaces are only needed where removed tokens left two words touching
+    StringBuilder builder = new StringBuilder(glsl.length());
+    int previousEnd = 0;
+    boolean removed = false;
+    for (int i = 0; i < n; i++) {
+      Token token = tokens.get(i);
+      String gap = glsl.substring(previousEnd, token.start);
+      previousEnd = token.end;
+      if (texts[i].isEmpty()) {
+        removed = true;
+        continue;
+      }
+      builder.append(gap);
+      if (removed && gap.isEmpty() && builder.length() > 0) {
+        char last = builder.charAt(builder.length() - 1);
+        String text = texts[i];
+        char first = text.charAt(0);
+        boolean number = first == '.' && text.length() > 1 && isDigit(text.charAt(1));
+        if (isWordPart(last) && (isWordPart(first) || number) || last == first && (last == '-' || last == '+')) {
+          builder.append(' ');
+        }
+      }
+      builder.append(texts[i]);
+      removed = false;
+    }
+    builder.append(glsl, previousEnd, glsl.length());
+    return builder.toString();
+  }
+
+  static String argumentText(String[] texts, int[] range) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = range[0]; i < range[1]; i++) {
+      builder.append(texts[i]);
+    }
+    return builder.toString();
+  }
+}
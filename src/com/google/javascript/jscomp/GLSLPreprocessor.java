@@ -0,0 +1,558 @@
+package com.google.javascript.jscomp;
+
+import java.util.*;
+
+/**
+ * Evaluates preprocessor conditionals at build time so shaders are
+ * specialized for each set of project defines. Project defines and GL_ES
+ * count as defined before the first line of every shader, and "#define" and
+ * "#undef" commands are followed from there. A shader may be joined at
+ * runtime with a header that defines more names, so a conditional is only
+ * evaluated when every name it needs is known this way. Anything else is
+ * kept along with all of its branches.
+ *
+ * Macros defined in the shader with a constant value, like "#define SCALE
+ * 2.0", are substituted into the code after them. Complete shaders (ones
+ * with "void main(") then lose those definitions if nothing mentions them
+ * anymore. Project defines with a constant value are substituted too, and
+ * the other project defines that the code, kept conditionals or macro
+ * values mention get a "#define" at the top so the shader still compiles.
+ *
+ * The input must already have been through
+ * GLSLMinifier.removeCommentsAndTightenSpaces().
+ */
+class GLSLPreprocessor {
+  // Conditional states
+  static final int DEAD = 0; // Inside a branch that was removed
+  static final int SEARCHING = 1; // No branch taken yet
+  static final int TAKEN = 2; // A branch was taken, the rest are removed
+  static final int KEPT = 3; // Couldn't be evaluated, so every branch is kept
+
+  // Guards against macros that expand to themselves
+  static final int MAX_EXPANSION_DEPTH = 16;
+
+  static final Map<String, String> BUILT_IN_DEFINES = new HashMap<String, String>() {{
+    put("GL_ES", "1");
+  }};
+
+  static final String[][] BINARY_OPERATORS = {
+    { "||" }, { "&&" }, { "|" }, { "^" }, { "&" }, { "==", "!=" }, { "<", ">", "<=", ">=" },
+    { "<<", ">>" }, { "+", "-" }, { "*", "/", "%" }
+  };
+
+  static final List<String> TWO_CHARACTER_OPERATORS = Arrays.asList("||", "&&", "==", "!=", "<=", ">=", "<<", ">>");
+
+  static class Conditional {
+    int state;
+    boolean emitting;
+
+    Conditional(int state, boolean emitting) {
+      this.state = state;
+      this.emitting = emitting;
+    }
+  }
+
+  // Project defines map names to their value as GLSL text, or to null for
+  // false, which counts as not defined
+  final Map<String, String> defines;
+  final HashMap<String, String> macros = new HashMap<String, String>(); // Null after "#undef"
+  final HashSet<String> unknown = new HashSet<String>(); // Changed in a kept branch
+  final ArrayDeque<Conditional> conditionals = new ArrayDeque<Conditional>();
+  final StringBuilder builder = new StringBuilder();
+  final HashMap<String, ArrayList<int[]>> constantDefinitions = new HashMap<String, ArrayList<int[]>>();
+  final TreeSet<String> mentionedDefines = new TreeSet<String>(); // Project defines left in the code
+  int keptDepth;
+
+  GLSLPreprocessor(Map<String, String> defines) {
+    this.defines = defines;
+  }
+
+  static String preprocess(String glsl, Map<String, String> defines) {
+    if (glsl.indexOf('#') == -1 && defines.isEmpty()) {
+      return glsl;
+    }
+    return new GLSLPreprocessor(defines).run(glsl);
+  }
+
+  // A short description of the defines for use in cache keys
+  static String describe(Map<String, String> defines) {
+    StringBuilder builder = new StringBuilder();
+    for (Map.Entry<String, String> entry : new TreeMap<String, String>(defines).entrySet()) {
+      builder.append(entry.getKey()).append('=').append(entry.getValue()).append('\n');
+    }
+    return builder.toString();
+  }
+
+  String run(String glsl) {
+    int copied = 0;
+    for (GLSLOptimizer.Token token : GLSLOptimizer.tokenize(glsl)) {
+      if (token.kind == GLSLOptimizer.DIRECTIVE) {
+        appendCode(glsl.substring(copied, token.start));
+        handleDirective(token.text);
+        copied = token.end;
+      }
+    }
+    appendCode(glsl.substring(copied));
+    return addMentionedDefines(removeUnusedDefinitions());
+  }
+
+  // Goes after "#version", which must come first
+  String addMentionedDefines(String glsl) {
+    if (mentionedDefines.isEmpty()) {
+      return glsl;
+    }
+    StringBuilder header = new StringBuilder();
+    for (String name : mentionedDefines) {
+      header.append("#define ").append(name).append(' ').append(defines.get(name)).append('\n');
+    }
+    int start = glsl.startsWith("#version") && glsl.indexOf('\n') != -1 ? glsl.indexOf('\n') + 1 : 0;
+    return glsl.substring(0, start) + header + glsl.substring(start);
+  }
+
+  boolean isEmitting() {
+    return conditionals.isEmpty() || conditionals.peek().emitting;
+  }
+
+  void handleDirective(String directive) {
+    String body = directive.substring(1).trim();
+    int end = 0;
+    while (end < body.length() && GLSLOptimizer.isWordPart(body.charAt(end))) {
+      end++;
+    }
+    String keyword = body.substring(0, end);
+    String rest = body.substring(end).trim();
+    Conditional top = conditionals.peek();
+
+    if (keyword.equals("if") || keyword.equals("ifdef") || keyword.equals("ifndef")) {
+      if (!isEmitting()) {
+        conditionals.push(new Conditional(DEAD, false));
+        return;
+      }
+      Long value = keyword.equals("if") ? evaluate(rest, 0) : isDefined(rest);
+      if (value != null && keyword.equals("ifndef")) {
+        value = value != 0 ? 0L : 1L;
+      }
+      if (value == null) {
+        appendDirective(directive);
+        mentionDefines(rest);
+        conditionals.push(new Conditional(KEPT, true));
+        keptDepth++;
+      } else {
+        conditionals.push(new Conditional(value != 0 ? TAKEN : SEARCHING, value != 0));
+      }
+    } else if ((keyword.equals("elif") || keyword.equals("else") || keyword.equals("endif")) && top == null) {
+      appendDirective(directive); // Unbalanced, so leave it for the driver to report
+    } else if (keyword.equals("elif")) {
+      if (top.state == TAKEN) {
+        top.emitting = false;
+      } else if (top.state == KEPT) {
+        appendDirective(directive);
+        mentionDefines(rest);
+      } else if (top.state == SEARCHING) {
+        Long value = evaluate(rest, 0);
+        if (value == null) {
+          // The branches before this one were all removed
+          appendDirective("#if " + rest);
+          mentionDefines(rest);
+          top.state = KEPT;
+          top.emitting = true;
+          keptDepth++;
+        } else if (value != 0) {
+          top.state = TAKEN;
+          top.emitting = true;
+        }
+      }
+    } else if (keyword.equals("else")) {
+      if (top.state == TAKEN) {
+        top.emitting = false;
+      } else if (top.state == KEPT) {
+        appendDirective(directive);
+      } else if (top.state == SEARCHING) {
+        top.state = TAKEN;
+        top.emitting = true;
+      }
+    } else if (keyword.equals("endif")) {
+      conditionals.pop();
+      if (top.state == KEPT) {
+        appendDirective(directive);
+        keptDepth--;
+      }
+    } else if (isEmitting()) {
+      int start = builder.length();
+      appendDirective(directive);
+      if (keyword.equals("define")) {
+        handleDefine(rest, start);
+      } else if (keyword.equals("undef")) {
+        setMacro(rest, null);
+      }
+    }
+  }
+
+  void handleDefine(String rest, int start) {
+    int end = 0;
+    while (end < rest.length() && GLSLOptimizer.isWordPart(rest.charAt(end))) {
+      end++;
+    }
+    String name = rest.substring(0, end);
+    if (name.isEmpty()) {
+      return;
+    }
+
+    // Function-like macros aren't followed
+    if (end < rest.length() && rest.charAt(end) == '(') {
+      unknown.add(name);
+      return;
+    }
+    String value = rest.substring(end).trim();
+    mentionDefines(value);
+    setMacro(name, value);
+    if (keptDepth == 0 && isConstant(value)) {
+      ArrayList<int[]> definitions = constantDefinitions.get(name);
+      if (definitions == null) {
+        definitions = new ArrayList<int[]>();
+        constantDefinitions.put(name, definitions);
+      }
+      definitions.add(new int[] { start, builder.length() });
+    }
+  }
+
+  // A macro changed in a kept branch may or may not be changed at runtime
+  void setMacro(String name, String value) {
+    if (keptDepth > 0) {
+      unknown.add(name);
+    } else {
+      unknown.remove(name);
+      macros.put(name, value);
+    }
+  }
+
+  // Only numbers and arithmetic, so substituting can't change any names
+  static boolean isConstant(String value) {
+    ArrayList<GLSLOptimizer.Token> tokens = GLSLOptimizer.tokenize(value);
+    for (GLSLOptimizer.Token token : tokens) {
+      if (token.kind != GLSLOptimizer.NUMBER && "+-*/()".indexOf(token.text.charAt(0)) == -1) {
+        return false;
+      }
+    }
+    return !tokens.isEmpty();
+  }
+
+  // Directives must start a line, even after code that had its newline trimmed
+  void appendDirective(String directive) {
+    if (builder.length() > 0 && builder.charAt(builder.length() - 1) != '\n') {
+      builder.append('\n');
+    }
+    builder.append(directive).append('\n');
+  }
+
+  void appendCode(String code) {
+    code = code.trim();
+    if (code.isEmpty() || !isEmitting()) {
+      return;
+    }
+
+    // Removed commands may leave two words touching
+    if (builder.length() > 0) {
+      char last = builder.charAt(builder.length() - 1);
+      if (last != '\n' && GLSLMinifier.isSpaceNeeded(last, code.charAt(0))) {
+        builder.append(' ');
+      }
+    }
+
+    // Substitute constant macros, except for fields and swizzles after "."
+    ArrayList<GLSLOptimizer.Token> tokens = GLSLOptimizer.tokenize(code);
+    int copied = 0;
+    for (int i = 0; i < tokens.size(); i++) {
+      GLSLOptimizer.Token token = tokens.get(i);
+      if (token.kind != GLSLOptimizer.WORD || i > 0 && tokens.get(i - 1).is(".")) {
+        continue;
+      }
+      String value = constantMacro(token.text);
+      if (value != null) {
+        builder.append(code, copied, token.start);
+        builder.append(GLSLOptimizer.tokenize(value).size() > 1 ? "(" + value + ")" : value);
+        copied = token.end;
+      } else if (isProjectDefine(token.text)) {
+        mentionedDefines.add(token.text);
+      }
+    }
+    builder.append(code, copied, code.length());
+  }
+
+  // Kept conditionals and macro values are left to the driver, which needs
+  // the project defines they mention. Those can't be substituted since they
+  // may be inside "defined()".
+  void mentionDefines(String text) {
+    for (String token : tokenizeExpression(text)) {
+      if (isProjectDefine(token)) {
+        mentionedDefines.add(token);
+      }
+    }
+  }
+
+  String constantMacro(String name) {
+    if (unknown.contains(name)) {
+      return null;
+    }
+    String value = macros.containsKey(name) ? macros.get(name) : defines.get(name);
+    return value != null && isConstant(value) ? value : null;
+  }
+
+  // Project defines that the shader didn't define or undefine itself
+  boolean isProjectDefine(String name) {
+    return !unknown.contains(name) && !macros.containsKey(name) && defines.get(name) != null;
+  }
+
+  // Complete shaders can't be joined with code that uses their macros
+  String removeUnusedDefinitions() {
+    String glsl = builder.toString().trim();
+    if (constantDefinitions.isEmpty() || !GLSLOptimizer.hasMain(GLSLOptimizer.tokenize(glsl))) {
+      return glsl;
+    }
+    ArrayList<String> references = new ArrayList<String>();
+    ArrayList<GLSLOptimizer.Token> tokens = GLSLOptimizer.tokenize(glsl);
+    GLSLOptimizer.addReferences(tokens, 0, tokens.size() - 1, references);
+    ArrayList<int[]> removed = new ArrayList<int[]>();
+    for (Map.Entry<String, ArrayList<int[]>> entry : constantDefinitions.entrySet()) {
+      if (Collections.frequency(references, entry.getKey()) == entry.getValue().size()) {
+        removed.addAll(entry.getValue());
+      }
+    }
+    if (removed.isEmpty()) {
+      return glsl;
+    }
+    Collections.sort(removed, new Comparator<int[]>() {
+      @Override
+      public int compare(int[] a, int[] b) {
+        return a[0] - b[0];
+      }
+    });
+    StringBuilder result = new StringBuilder(glsl.length());
+    int copied = 0;
+    for (int[] range : removed) {
+      result.append(glsl, copied, Math.min(range[0], glsl.length()));
+      copied = Math.min(range[1], glsl.length());
+      if (result.length() > 0 && copied < glsl.length() &&
+          GLSLMinifier.isSpaceNeeded(result.charAt(result.length() - 1), glsl.charAt(copied))) {
+        result.append(' ');
+      }
+    }
+    result.append(glsl, copied, glsl.length());
+    return result.toString().trim();
+  }
+
+  // Returns 1 or 0, or null if it depends on something only known at runtime
+  Long isDefined(String name) {
+    if (unknown.contains(name)) {
+      return null;
+    }
+    if (macros.containsKey(name)) {
+      return macros.get(name) != null ? 1L : 0L;
+    }
+    if (defines.containsKey(name)) {
+      return defines.get(name) != null ? 1L : 0L;
+    }
+    return BUILT_IN_DEFINES.containsKey(name) ? 1L : null;
+  }
+
+  // Returns the value of a name in a conditional, or null if it's unknown
+  Long valueOf(String name, int depth) {
+    Long defined = isDefined(name);
+    if (defined == null) {
+      return null;
+    }
+    if (defined == 0) {
+      return 0L; // Names that aren't defined are 0
+    }
+    String value = macros.containsKey(name) ? macros.get(name) :
+      defines.containsKey(name) ? defines.get(name) : BUILT_IN_DEFINES.get(name);
+    return evaluate(value, depth + 1);
+  }
+
+  Long evaluate(String expression, int depth) {
+    if (depth > MAX_EXPANSION_DEPTH) {
+      return null;
+    }
+    Expression parser = new Expression(this, tokenizeExpression(expression), depth);
+    Long value = parser.parseBinary(0);
+    return parser.failed || parser.next < parser.tokens.size() ? null : value;
+  }
+
+  static ArrayList<String> tokenizeExpression(String expression) {
+    ArrayList<String> tokens = new ArrayList<String>();
+    int n = expression.length();
+    int i = 0;
+    while (i < n) {
+      char c = expression.charAt(i);
+      int start = i;
+      if (c <= ' ') {
+        i++;
+        continue;
+      }
+      if (GLSLOptimizer.isWordPart(c)) {
+        while (i < n && (GLSLOptimizer.isWordPart(expression.charAt(i)) || expression.charAt(i) == '.')) {
+          i++;
+        }
+      } else if (i + 1 < n && TWO_CHARACTER_OPERATORS.contains(expression.substring(i, i + 2))) {
+        i += 2;
+      } else {
+        i++;
+      }
+      tokens.add(expression.substring(start, i));
+    }
+    return tokens;
+  }
+
+  // Integer expressions as in "#if", with C's precedence. Unknown values
+  // spread to the result unless "&&" or "||" makes them irrelevant.
+  static class Expression {
+    final GLSLPreprocessor preprocessor;
+    final ArrayList<String> tokens;
+    final int depth;
+    int next;
+    boolean failed;
+
+    Expression(GLSLPreprocessor preprocessor, ArrayList<String> tokens, int depth) {
+      this.preprocessor = preprocessor;
+      this.tokens = tokens;
+      this.depth = depth;
+    }
+
+    String peek() {
+      return next < tokens.size() ? tokens.get(next) : "";
+    }
+
+    boolean eat(String token) {
+      if (peek().equals(token)) {
+        next++;
+        return true;
+      }
+      return false;
+    }
+
+    Long parseBinary(int level) {
+      if (level == BINARY_OPERATORS.length) {
+        return parseUnary();
+      }
+      Long left = parseBinary(level + 1);
+      while (Arrays.asList(BINARY_OPERATORS[level]).contains(peek())) {
+        String operator = tokens.get(next++);
+        Long right = parseBinary(level + 1);
+        left = apply(operator, left, right);
+      }
+      return left;
+    }
+
+    Long apply(String operator, Long left, Long right) {
+      if (operator.equals("&&")) {
+        return isFalse(left) || isFalse(right) ? Long.valueOf(0) : left != null && right != null ? Long.valueOf(1) : null;
+      }
+      if (operator.equals("||")) {
+        return isTrue(left) || isTrue(right) ? Long.valueOf(1) : left != null && right != null ? Long.valueOf(0) : null;
+      }
+      if (left == null || right == null) {
+        return null;
+      }
+      long a = left;
+      long b = right;
+      if (operator.equals("|")) {
+        return a | b;
+      } else if (operator.equals("^")) {
+        return a ^ b;
+      } else if (operator.equals("&")) {
+        return a & b;
+      } else if (operator.equals("==")) {
+        return a == b ? 1L : 0L;
+      } else if (operator.equals("!=")) {
+        return a != b ? 1L : 0L;
+      } else if (operator.equals("<")) {
+        return a < b ? 1L : 0L;
+      } else if (operator.equals(">")) {
+        return a > b ? 1L : 0L;
+      } else if (operator.equals("<=")) {
+        return a <= b ? 1L : 0L;
+      } else if (operator.equals(">=")) {
+        return a >= b ? 1L : 0L;
+      } else if (operator.equals("<<")) {
+        return a << b;
+      } else if (operator.equals(">>")) {
+        return a >> b;
+      } else if (operator.equals("+")) {
+        return a + b;
+      } else if (operator.equals("-")) {
+        return a - b;
+      } else if (operator.equals("*")) {
+        return a * b;
+      } else if (b == 0) {
+        failed = true; // Let the driver report division by zero
+        return null;
+      }
+      return operator.equals("/") ? a / b : a % b;
+    }
+
+    static boolean isTrue(Long value) {
+      return value != null && value != 0;
+    }
+
+    static boolean isFalse(Long value) {
+      return value != null && value == 0;
+    }
+
+    Long parseUnary() {
+      if (eat("!")) {
+        Long value = parseUnary();
+        return value == null ? null : value == 0 ? Long.valueOf(1) : Long.valueOf(0);
+      }
+      if (eat("-")) {
+        Long value = parseUnary();
+        return value == null ? null : -value;
+      }
+      if (eat("~")) {
+        Long value = parseUnary();
+        return value == null ? null : ~value;
+      }
+      if (eat("+")) {
+        return parseUnary();
+      }
+      if (eat("(")) {
+        Long value = parseBinary(0);
+        failed |= !eat(")");
+        return value;
+      }
+      if (eat("defined")) {
+        boolean parenthesized = eat("(");
+        String name = peek();
+        if (name.isEmpty() || !GLSLOptimizer.isWordStart(name.charAt(0))) {
+          failed = true;
+          return null;
+        }
+        next++;
+        failed |= parenthesized && !eat(")");
+        return preprocessor.isDefined(name);
+      }
+      String token = peek();
+      if (token.isEmpty()) {
+        failed = true;
+        return null;
+      }
+      next++;
+      if (GLSLOptimizer.isWordStart(token.charAt(0))) {
+        return preprocessor.valueOf(token, depth);
+      }
+      return parseInteger(token);
+    }
+
+    // Floats aren't allowed in conditionals
+    Long parseInteger(String token) {
+      try {
+        if (token.startsWith("0x") || token.startsWith("0X")) {
+          return Long.parseLong(token.substring(2), 16);
+        }
+        return token.length() > 1 && token.startsWith("0") ? Long.parseLong(token, 8) : Long.parseLong(token);
+      } catch (NumberFormatException e) {
+        failed = true;
+        return null;
+      }
+    }
+  }
+}
@@ -0,0 +1,336 @@
+package com.google.javascript.jscomp;
+
+import com.google.javascript.jscomp.Scope.Var;
+import com.google.javascript.rhino.*;
+import com.google.javascript.rhino.jstype.FunctionType;
+import com.google.javascript.rhino.jstype.JSType;
+import java.util.*;
+
+/**
+ * Moves getUniformLocation() and getAttribLocation() calls out of functions
+ * into global variables set right after the program is linked. Each lookup is
+ * a synchronous round trip to the driver, and render loops tend to do them
+ * every frame. A lookup is only moved when its context and program are global
+ * variables that are set once where they're declared, the program is only
+ * ever passed to WebGL methods, it's linked exactly once by a top-level
+ * statement, and nothing before that statement could run the lookup early.
+ * Lookups of a constant name that can't be moved cause a warning when they
+ * may run more than once, like in a callback or a loop. Setup code that runs
+ * once wouldn't gain anything from moving them, so it doesn't warn.
+ */
+class HoistLocationLookupsPass extends NodeTraversal.AbstractPostOrderCallback implements CompilerPass {
+  static final DiagnosticType UNHOISTED_LOCATION_LOOKUP = DiagnosticType.warning(
+    "JSC_UNHOISTED_LOCATION_LOOKUP",
+    "The {0}() call is done every time instead of once after linking because {1}.");
+
+  static final Set<String> LOOKUP_METHODS = new HashSet<String>() {{
+    add("getUniformLocation");
+    add("getAttribLocation");
+  }};
+
+  // Guards against functions that call each other
+  static final int MAX_CALLER_DEPTH = 16;
+
+  // Not all caps, so inlineConstants doesn't move the lookups back
+  static final String CACHE_NAME = "JSCompiler_location_";
+
+  AbstractCompiler compiler;
+  JSType contextType;
+  JSType context2Type; // Null unless the externs declare WebGL2RenderingContext
+
+  // Global names by how many times they're set, counting initializers
+  HashMap<String, Integer> assignments = new HashMap<String, Integer>();
+
+  // The top-level "var" statements that give global names their values
+  HashMap<String, Node> declarations = new HashMap<String, Node>();
+
+  // Global names used other than as an argument to a WebGL method
+  HashSet<String> escaped = new HashSet<String>();
+
+  // Global names declared in the sources and property names assigned or
+  // written in object literals there. Calls to any other name can only
+  // reach the externs, even when the type checker doesn't know the callee.
+  HashSet<String> sourceNames = new HashSet<String>();
+  HashSet<String> sourceProperties = new HashSet<String>();
+
+  // linkProgram() calls by the name of the program they link
+  HashMap<String, ArrayList<Node>> links = new HashMap<String, ArrayList<Node>>();
+
+  // Lookups inside functions, in the order they were found
+  ArrayList<Node> lookups = new ArrayList<Node>();
+
+  // Uses of each name other than declaring it, in any scope
+  HashMap<String, ArrayList<Node>> references = new HashMap<String, ArrayList<Node>>();
+
+  // Top-level statements in the order they run
+  ArrayList<Node> statements = new ArrayList<Node>();
+  HashMap<Node, Integer> order = new HashMap<Node, Integer>();
+
+  // Whether the statements before each link might run code from the sources
+  HashMap<Node, Boolean> runsSourceCodeBefore = new HashMap<Node, Boolean>();
+
+  HoistLocationLookupsPass(AbstractCompiler compiler) {
+    this.compiler = compiler;
+    contextType = compiler.getTypeRegistry().getType("WebGLRenderingContext");
+    context2Type = compiler.getTypeRegistry().getType("WebGL2RenderingContext");
+  }
+
+  @Override
+  public void process(Node externs, Node root) {
+    NodeTraversal.traverse(compiler, root, this);
+    for (Node script = root.getFirstChild(); script != null; script = script.getNext()) {
+      for (Node statement = script.getFirstChild(); statement != null; statement = statement.getNext()) {
+        order.put(statement, statements.size());
+        statements.add(statement);
+      }
+    }
+
+    // Lookups of the same name share one variable per program
+    HashMap<String, String> cacheNames = new HashMap<String, String>();
+    HashMap<Node, Node> lastHoisted = new HashMap<Node, Node>();
+    for (Node call : lookups) {
+      Node callee = call.getFirstChild();
+      Node name = callee.getNext().getNext();
+      if (name.isName() && !isConstantString(name.getString())) {
+        continue;
+      }
+      String method = callee.getLastChild().getString();
+      String reason = whyNotHoisted(call);
+      if (reason != null) {
+        if (mayRunRepeatedly(call, 0)) {
+          compiler.report(JSError.make(call, UNHOISTED_LOCATION_LOOKUP, method, reason));
+        }
+        continue;
+      }
+
+      Node link = links.get(callee.getNext().getString()).get(0).getParent();
+      String key = callee.getFirstChild().getString() + '\0' + callee.getNext().getString() + '\0' +
+        method + '\0' + (name.isName() ? name.getString() : '"' + name.getString());
+      String cacheName = cacheNames.get(key);
+      if (cacheName == null) {
+        cacheName = CACHE_NAME + cacheNames.size();
+        cacheNames.put(key, cacheName);
+        Node previous = lastHoisted.containsKey(link) ? lastHoisted.get(link) : link;
+        Node declaration = NodeUtil.newVarNode(cacheName, call.cloneTree()).srcrefTree(call);
+        previous.getParent().addChildAfter(declaration, previous);
+        lastHoisted.put(link, declaration);
+      }
+      call.getParent().replaceChild(call, IR.name(cacheName).srcref(call));
+      compiler.reportCodeChange();
+    }
+  }
+
+  @Override
+  public void visit(NodeTraversal t, Node node, Node parent) {
+    if (node.isName() && !node.getString().isEmpty() && !parent.isVar() && !parent.isFunction()) {
+      ArrayList<Node> uses = references.get(node.getString());
+      if (uses == null) {
+        uses = new ArrayList<Node>();
+        references.put(node.getString(), uses);
+      }
+      uses.add(node);
+    }
+    if (node.isName() && !node.getString().isEmpty()) {
+      Var var = t.getScope().getVar(node.getString());
+      if (var != null && var.isGlobal()) {
+        visitGlobalName(node, parent);
+      }
+    } else if (node.isCall() && isContextMethod(node.getFirstChild())) {
+      visitContextMethod(t, node);
+    } else if (node.isGetProp() && NodeUtil.isAssignmentOp(parent) && parent.getFirstChild() == node) {
+      sourceProperties.add(node.getLastChild().getString());
+    } else if (node.isObjectLit()) {
+      for (Node key = node.getFirstChild(); key != null; key = key.getNext()) {
+        sourceProperties.add(key.getString());
+      }
+    }
+  }
+
+  void visitGlobalName(Node node, Node parent) {
+    String name = node.getString();
+    if (parent.isVar() || parent.isFunction()) {
+      sourceNames.add(name);
+    }
+    if (parent.isVar()) {
+      if (node.hasChildren()) {
+        addAssignment(name);
+        if (parent.getParent().isScript()) {
+          declarations.put(name, parent);
+        }
+      }
+    } else if (parent.isFunction() ||
+        (NodeUtil.isAssignmentOp(parent) && parent.getFirstChild() == node) ||
+        parent.getType() == Token.INC || parent.getType() == Token.DEC ||
+        (NodeUtil.isForIn(parent) && parent.getFirstChild() == node)) {
+      addAssignment(name);
+    } else if (!parent.isCall() || parent.getFirstChild() == node || !isContextMethod(parent.getFirstChild())) {
+      escaped.add(name);
+    }
+  }
+
+  void addAssignment(String name) {
+    Integer count = assignments.get(name);
+    assignments.put(name, count == null ? 1 : count + 1);
+  }
+
+  void visitContextMethod(NodeTraversal t, Node node) {
+    Node callee = node.getFirstChild();
+    String method = callee.getLastChild().getString();
+    Node program = callee.getNext();
+    if (program == null) {
+      return;
+    }
+    if (method.equals("linkProgram")) {
+      if (program.isName()) {
+        ArrayList<Node> calls = links.get(program.getString());
+        if (calls == null) {
+          calls = new ArrayList<Node>();
+          links.put(program.getString(), calls);
+        }
+        calls.add(node);
+      }
+    } else if (LOOKUP_METHODS.contains(method) && !t.inGlobalScope()) {
+      Node name = program.getNext();
+      if (name != null && (name.isString() || name.isName())) {
+        lookups.add(node);
+      }
+    }
+  }
+
+  boolean isContextMethod(Node callee) {
+    if (!callee.isGetProp() || callee.getFirstChild().getJSType() == null) {
+      return false;
+    }
+    JSType type = callee.getFirstChild().getJSType().restrictByNotNullOrUndefined();
+    return type == contextType || (context2Type != null && type == context2Type);
+  }
+
+  boolean isSetOnce(String name) {
+    Integer count = assignments.get(name);
+    return count != null && count == 1 && declarations.containsKey(name);
+  }
+
+  // Names like those annotated "@const {GLSL}" that always hold one string
+  boolean isConstantString(String name) {
+    if (!isSetOnce(name)) {
+      return false;
+    }
+    for (Node c = declarations.get(name).getFirstChild(); c != null; c = c.getNext()) {
+      if (c.getString().equals(name)) {
+        return c.getFirstChild().isString();
+      }
+    }
+    return false;
+  }
+
+  // Returns null if the lookup can be done once right after linking
+  String whyNotHoisted(Node call) {
+    Node callee = call.getFirstChild();
+    Node context = callee.getFirstChild();
+    Node program = callee.getNext();
+    Node name = program.getNext();
+    if (!context.isName() || !isSetOnce(context.getString())) {
+      return "the context is not a global variable that is only set where it's declared";
+    }
+    if (!program.isName() || !isSetOnce(program.getString())) {
+      return "the program is not a global variable that is only set where it's declared";
+    }
+    if (escaped.contains(program.getString())) {
+      return "the program is used outside of WebGL calls";
+    }
+
+    ArrayList<Node> calls = links.get(program.getString());
+    Node link = calls != null && calls.size() == 1 ? calls.get(0) : null;
+    Node receiver = link != null ? link.getFirstChild().getFirstChild() : null;
+    if (link == null || !link.getParent().isExprResult() || !order.containsKey(link.getParent()) ||
+        !receiver.isName() || !receiver.getString().equals(context.getString())) {
+      return "the program is not linked exactly once by a top-level linkProgram() call on the same context";
+    }
+
+    int index = order.get(link.getParent());
+    if (order.get(declarations.get(context.getString())) > index ||
+        order.get(declarations.get(program.getString())) > index ||
+        (name.isName() && order.get(declarations.get(name.getString())) > index)) {
+      return "a variable it uses is declared after the linkProgram() call";
+    }
+    if (runsSourceCodeBefore(index)) {
+      return "code before the linkProgram() call might do the lookup first";
+    }
+    return null;
+  }
+
+  // Whether the node is in a loop (other than the start of a "for"), in a
+  // function that's passed somewhere else, or in a function called from more
+  // than one place. Names are matched without regard to scope, which can only
+  // make this true more often.
+  boolean mayRunRepeatedly(Node node, int depth) {
+    if (depth > MAX_CALLER_DEPTH) {
+      return true;
+    }
+    for (Node parent = node.getParent(); parent != null; node = parent, parent = parent.getParent()) {
+      if (NodeUtil.isLoopStructure(parent) && !(parent.isFor() && node == parent.getFirstChild())) {
+        return true;
+      }
+      if (!parent.isFunction()) {
+        continue;
+      }
+      Node function = parent;
+      Node container = function.getParent();
+      if (container.isCall() && container.getFirstChild() == function) {
+        continue; // Called right where it's written
+      }
+      String name = container.isName() && container.getParent().isVar() ? container.getString() :
+        NodeUtil.isFunctionDeclaration(function) ? function.getFirstChild().getString() : null;
+      ArrayList<Node> uses = name != null ? references.get(name) : null;
+      if (uses == null || uses.size() != 1) {
+        return true;
+      }
+      Node use = uses.get(0);
+      return !use.getParent().isCall() || use.getParent().getFirstChild() != use || mayRunRepeatedly(use, depth + 1);
+    }
+    return false;
+  }
+
+  boolean runsSourceCodeBefore(int index) {
+    Node link = statements.get(index);
+    Boolean result = runsSourceCodeBefore.get(link);
+    if (result == null) {
+      result = false;
+      for (int i = 0; i < index && !result; i++) {
+        Node statement = statements.get(i);
+        result = !statement.isFunction() && mayRunSourceCode(statement);
+      }
+      runsSourceCodeBefore.put(link, result);
+    }
+    return result;
+  }
+
+  // Calls to functions from the sources might do anything, and so might
+  // functions from the sources that get passed somewhere else
+  boolean mayRunSourceCode(Node node) {
+    if (node.isFunction()) {
+      return node.getParent().isCall() || node.getParent().isNew();
+    }
+    if (node.isCall() || node.isNew()) {
+      Node callee = node.getFirstChild();
+      if (callee.isName() ? sourceNames.contains(callee.getString()) :
+          !callee.isGetProp() || sourceProperties.contains(callee.getLastChild().getString())) {
+        return true;
+      }
+    }
+    if ((node.isName() || node.isGetProp()) && isSourceFunction(node.getJSType())) {
+      return true;
+    }
+    for (Node child = node.getFirstChild(); child != null; child = child.getNext()) {
+      if (mayRunSourceCode(child)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static boolean isSourceFunction(JSType type) {
+    FunctionType function = type != null ? type.restrictByNotNullOrUndefined().toMaybeFunctionType() : null;
+    return function != null && function.getSource() != null && !function.getSource().isFromExterns();
+  }
+}
@@ -0,0 +1,384 @@
+package com.google.javascript.jscomp;
+
+import com.google.common.hash.*;
+import com.google.common.io.Files;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import org.json.*;
+
+/**
+ * A command from the "before" or "after" list in the project file. Entries
+ * are either plain command strings or objects with a "command" and optional
+ * "name", "requires", "background", "inputs", and "outputs" properties. Hooks
+ * without a "requires" list depend on the hook listed before them so plain
+ * command lists still run one after another like they always have.
+ */
+class Hook {
+  String id; // Unique across both lists, used to remember previous runs
+  String name; // Used in "requires" lists and to prefix output
+  String command;
+  int[] requires; // Indices of hooks that must finish first
+  boolean background; // Before hooks only: may overlap with compilation
+  String[] inputs; // Globs, the hook is skipped when these are unchanged
+  String[] outputs; // Files, the hook must run again if these change
+
+  static Hook[] parseHooks(JSONObject json, String key) throws JSONException {
+    if (!json.has(key)) {
+      return new Hook[0];
+    }
+    JSONArray array = json.getJSONArray(key);
+    Hook[] hooks = new Hook[array.length()];
+    String[][] requiredNames = new String[hooks.length][];
+    HashMap<String, Integer> indices = new HashMap<String, Integer>();
+
+    for (int i = 0; i < hooks.length; i++) {
+      Hook hook = hooks[i] = new Hook();
+      Object value = array.get(i);
+      if (value instanceof JSONObject) {
+        JSONObject object = (JSONObject)value;
+        hook.command = object.getString("command");
+        hook.name = object.optString("name", hook.command);
+        hook.background = object.optBoolean("background", false);
+        hook.outputs = Globals.parseStrings(object, "outputs");
+        if (object.has("inputs")) {
+          hook.inputs = Globals.parseStrings(object, "inputs");
+        }
+        if (object.has("requires")) {
+          requiredNames[i] = Globals.parseStrings(object, "requires");
+        }
+      } else {
+        hook.command = array.getString(i);
+        hook.name = hook.command;
+        hook.outputs = new String[0];
+      }
+      hook.id = key + ":" + hook.name;
+      if (indices.containsKey(hook.name)) {
+        throw new JSONException("Duplicate hook name \"" + hook.name + "\" in \"" + key + "\"");
+      }
+      indices.put(hook.name, i);
+    }
+
+    // Resolve dependencies now that all names are known
+    for (int i = 0; i < hooks.length; i++) {
+      if (requiredNames[i] == null) {
+        hooks[i].requires = i > 0 ? new int[] { i - 1 } : new int[0];
+        continue;
+      }
+      hooks[i].requires = new int[requiredNames[i].length];
+      for (int j = 0; j < requiredNames[i].length; j++) {
+        Integer index = indices.get(requiredNames[i][j]);
+        if (index == null) {
+          throw new JSONException("Unknown hook \"" + requiredNames[i][j] + "\" required by \"" + hooks[i].name + "\"");
+        }
+        hooks[i].requires[j] = index;
+      }
+    }
+
+    checkForCycles(hooks);
+    return hooks;
+  }
+
+  List<File> inputFiles() {
+    ArrayList<File> files = new ArrayList<File>();
+    for (String input : inputs) {
+      files.addAll(Globals.expandGlob(input));
+    }
+    return files;
+  }
+
+  List<File> outputFiles() {
+    ArrayList<File> files = new ArrayList<File>();
+    for (String output : outputs) {
+      files.add(new File(output));
+    }
+    return files;
+  }
+
+  boolean outputsContain(String path) {
+    String absolutePath = new File(path).getAbsolutePath();
+    for (String output : outputs) {
+      if (new File(output).getAbsolutePath().equals(absolutePath)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  static void checkForCycles(Hook[] hooks) throws JSONException {
+    int[] state = new int[hooks.length]; // 0 = unvisited, 1 = visiting, 2 = done
+    for (int i = 0; i < hooks.length; i++) {
+      visit(hooks, state, i);
+    }
+  }
+
+  static void visit(Hook[] hooks, int[] state, int i) throws JSONException {
+    if (state[i] == 2) {
+      return;
+    }
+    if (state[i] == 1) {
+      throw new JSONException("Hook \"" + hooks[i].name + "\" depends on itself");
+    }
+    state[i] = 1;
+    for (int required : hooks[i].requires) {
+      visit(hooks, state, required);
+    }
+    state[i] = 2;
+  }
+}
+
+/**
+ * Runs hooks on a bounded thread pool as soon as everything they require has
+ * finished. The output of each hook is drained while it runs (a full pipe
+ * buffer would otherwise block the child forever) and streamed to the console
+ * one line at a time with the hook name as a prefix. Hooks that declare their
+ * inputs are skipped when the contents of their inputs and outputs are the
+ * same as after their last successful run.
+ */
+class HookRunner {
+  // Hooks mostly wait on child processes, so use a few threads even on
+  // machines with a single core
+  static final int THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
+
+  final ExecutorService pool;
+
+  // Maps hook ids to their command and the hash of their inputs and outputs
+  // after their last successful run, which lasts for as long as we are watching
+  final ConcurrentHashMap<String, String> fingerprints = new ConcurrentHashMap<String, String>();
+
+  HookRunner() {
+    pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "gccjs-hook");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  Run start(Hook[] hooks) {
+    Run run = new Run(hooks);
+    run.start();
+    return run;
+  }
+
+  class Run {
+    final Hook[] hooks;
+    final int[] remaining;
+    final boolean[] finished;
+    final boolean[] failed;
+    final ArrayList<ArrayList<Integer>> dependents = new ArrayList<ArrayList<Integer>>();
+    final ArrayList<String> errors = new ArrayList<String>();
+    int executedCount;
+    int skippedCount;
+
+    Run(Hook[] hooks) {
+      this.hooks = hooks;
+      remaining = new int[hooks.length];
+      finished = new boolean[hooks.length];
+      failed = new boolean[hooks.length];
+      for (int i = 0; i < hooks.length; i++) {
+        dependents.add(new ArrayList<Integer>());
+      }
+      for (int i = 0; i < hooks.length; i++) {
+        remaining[i] = hooks[i].requires.length;
+        for (int required : hooks[i].requires) {
+          dependents.get(required).add(i);
+        }
+      }
+    }
+
+    synchronized void start() {
+      for (int i = 0; i < hooks.length; i++) {
+        if (remaining[i] == 0) {
+          submit(i);
+        }
+      }
+    }
+
+    void submit(final int i) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          Hook hook = hooks[i];
+          String error = null;
+          boolean upToDate = false;
+
+          // Every hook must finish, or waiting for the run never returns
+          try {
+            String inputs = hook.inputs == null ? null : hashFiles(hook.inputFiles());
+            String previous = fingerprints.get(hook.id);
+            if (inputs != null && previous != null && previous.equals(fingerprint(hook, inputs))) {
+              System.out.println("[" + hook.name + "] Up to date");
+              upToDate = true;
+            } else {
+              fingerprints.remove(hook.id);
+              error = execute(hook);
+              if (inputs != null && error == null) {
+                String fingerprint = fingerprint(hook, inputs);
+                if (fingerprint != null) {
+                  fingerprints.put(hook.id, fingerprint);
+                }
+              }
+            }
+          } catch (RuntimeException e) {
+            error = "Could not run \"" + hook.command + "\": " + e;
+          } finally {
+            if (upToDate) {
+              finishSkipped(i);
+            } else {
+              finishExecuted(i, error);
+            }
+          }
+        }
+      });
+    }
+
+    synchronized void finish(int i, String error) {
+      finished[i] = true;
+      if (error != null) {
+        failed[i] = true;
+        errors.add(error);
+      }
+      for (int dependent : dependents.get(i)) {
+        if (failed[i]) {
+          skip(dependent);
+        } else if (--remaining[dependent] == 0 && !finished[dependent]) {
+          submit(dependent);
+        }
+      }
+      notifyAll();
+    }
+
+    synchronized void finishExecuted(int i, String error) {
+      executedCount++;
+      finish(i, error);
+    }
+
+    synchronized void finishSkipped(int i) {
+      skippedCount++;
+      finish(i, null);
+    }
+
+    // Don't run anything that depends on a failed hook
+    void skip(int i) {
+      if (!finished[i]) {
+        finished[i] = true;
+        failed[i] = true;
+        for (int dependent : dependents.get(i)) {
+          skip(dependent);
+        }
+      }
+    }
+
+    // Blocks until all hooks that aren't in the background (and everything
+    // they require) are done, then returns false if any of those failed
+    boolean awaitForeground() throws InterruptedException {
+      boolean[] needed = new boolean[hooks.length];
+      for (int i = 0; i < hooks.length; i++) {
+        if (!hooks[i].background) {
+          markNeeded(needed, i);
+        }
+      }
+      return await(needed);
+    }
+
+    boolean awaitAll() throws InterruptedException {
+      boolean[] needed = new boolean[hooks.length];
+      Arrays.fill(needed, true);
+      return await(needed);
+    }
+
+    void markNeeded(boolean[] needed, int i) {
+      if (!needed[i]) {
+        needed[i] = true;
+        for (int required : hooks[i].requires) {
+          markNeeded(needed, required);
+        }
+      }
+    }
+
+    synchronized boolean await(boolean[] needed) throws InterruptedException {
+      for (int i = 0; i < hooks.length; i++) {
+        while (needed[i] && !finished[i]) {
+          wait();
+        }
+      }
+      for (int i = 0; i < hooks.length; i++) {
+        if (needed[i] && failed[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    synchronized List<String> takeErrors() {
+      ArrayList<String> result = new ArrayList<String>(errors);
+      errors.clear();
+      return result;
+    }
+  }
+
+  // Includes the command so editing it in the project file runs the hook
+  // again. Returns null if any of the outputs couldn't be read.
+  static String fingerprint(Hook hook, String inputs) {
+    String outputs = hashFiles(hook.outputFiles());
+    return outputs == null ? null : hook.command + '\0' + inputs + outputs;
+  }
+
+  // Returns null if any of the files couldn't be read
+  static String hashFiles(List<File> files) {
+    Hasher hasher = Hashing.sha1().newHasher();
+    try {
+      for (File file : files) {
+        hasher.putString(file.getPath());
+        if (file.isFile()) {
+          hasher.putBytes(Files.toByteArray(file));
+        } else {
+          hasher.putInt(-1);
+        }
+      }
+    } catch (IOException e) {
+      return null;
+    }
+    return hasher.hash().toString();
+  }
+
+  // Returns an error message on failure and null on success
+  static String execute(Hook hook) {
+    try {
+      Process process = Runtime.getRuntime().exec(hook.command);
+      Thread stderr = pump(process.getErrorStream(), hook.name);
+      stderr.start();
+      pump(process.getInputStream(), hook.name).run();
+      stderr.join();
+      int exitCode = process.waitFor();
+      if (exitCode != 0) {
+        return "Unexpected exit code " + exitCode + ": " + hook.command;
+      }
+      return null;
+    } catch (IOException e) {
+      return e.getMessage();
+    } catch (InterruptedException e) {
+      return e.getMessage();
+    }
+  }
+
+  static Thread pump(final InputStream stream, final String prefix) {
+    return new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          BufferedReader reader = new BufferedReader(new InputStreamReader(stream));
+          String line;
+          while ((line = reader.readLine()) != null) {
+            System.out.println("[" + prefix + "] " + line);
+          }
+          reader.close();
+        } catch (IOException e) {
+        }
+      }
+    }, "gccjs-hook-output");
+  }
+}
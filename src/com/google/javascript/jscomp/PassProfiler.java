@@ -0,0 +1,164 @@
+package com.google.javascript.jscomp;
+
+import com.google.javascript.rhino.*;
+import java.lang.management.*;
+import java.util.*;
+import org.json.*;
+
+/**
+ * Measures every run of every compiler pass. CustomPassConfig wraps each
+ * PassFactory with wrap() so the wall time, the bytes allocated by the
+ * compiler thread, and whether the pass reported a code change are recorded
+ * each time the pass runs. Passes in a fixed point loop run many times and
+ * are accumulated under the same name. The start of the first pass in each
+ * phase is also remembered so compilation can be split into phases. Passes
+ * and phases are also reported to Java Flight Recorder.
+ */
+class PassProfiler {
+  static class PassStats {
+    String name;
+    int runs;
+    int changes;
+    long nanos;
+    long allocatedBytes;
+  }
+
+  final LinkedHashMap<String, PassStats> stats = new LinkedHashMap<String, PassStats>();
+  final long[] phaseStartTimes = new long[Phase.values().length];
+  String project;
+  Object phaseEvent; // For Java Flight Recorder, null when not recording
+
+  PassFactory wrap(final PassFactory factory, final Phase phase) {
+    return new PassFactory(factory.getName(), factory.isOneTimePass()) {
+      @Override
+      CompilerPass create(final AbstractCompiler compiler) {
+        final CompilerPass pass = factory.create(compiler);
+        return new CompilerPass() {
+          @Override
+          public void process(Node externs, Node root) {
+            CodeChangeHandler changes = new CodeChangeHandler();
+            compiler.addChangeHandler(changes);
+            long startBytes = allocatedBytes();
+            long startTime = System.nanoTime();
+            markPhaseStart(phase, startTime);
+            Object event = FlightRecorderEvents.beginPass(factory.getName(), phase);
+            try {
+              pass.process(externs, root);
+            } finally {
+              long nanos = System.nanoTime() - startTime;
+              long bytes = allocatedBytes() - startBytes;
+              compiler.removeChangeHandler(changes);
+              record(factory.getName(), nanos, bytes, changes.hasCodeChanged());
+              FlightRecorderEvents.endPass(event, changes.hasCodeChanged());
+            }
+          }
+        };
+      }
+    };
+  }
+
+  List<PassFactory> wrapAll(List<PassFactory> factories, Phase phase) {
+    ArrayList<PassFactory> wrapped = new ArrayList<PassFactory>();
+    for (PassFactory factory : factories) {
+      wrapped.add(wrap(factory, phase));
+    }
+    return wrapped;
+  }
+
+  // Compilation starts by parsing, which doesn't run any passes
+  synchronized void startPhases(String project) {
+    this.project = project;
+    phaseEvent = FlightRecorderEvents.beginPhase(Phase.PARSE, project);
+  }
+
+  synchronized void endPhases() {
+    FlightRecorderEvents.endPhase(phaseEvent);
+    phaseEvent = null;
+  }
+
+  synchronized void markPhaseStart(Phase phase, long time) {
+    if (phaseStartTimes[phase.ordinal()] == 0) {
+      phaseStartTimes[phase.ordinal()] = time;
+      FlightRecorderEvents.endPhase(phaseEvent);
+      phaseEvent = FlightRecorderEvents.beginPhase(phase, project);
+    }
+  }
+
+  // Returns the System.nanoTime() when the phase started, or the given
+  // default if no pass in that phase ran
+  synchronized long phaseStartTime(Phase phase, long defaultTime) {
+    long time = phaseStartTimes[phase.ordinal()];
+    return time != 0 ? time : defaultTime;
+  }
+
+  synchronized void record(String name, long nanos, long bytes, boolean changed) {
+    PassStats pass = stats.get(name);
+    if (pass == null) {
+      pass = new PassStats();
+      pass.name = name;
+      stats.put(name, pass);
+    }
+    pass.runs++;
+    pass.nanos += nanos;
+    pass.allocatedBytes += Math.max(0, bytes);
+    if (changed) {
+      pass.changes++;
+    }
+  }
+
+  // Returns 0 if the JVM can't measure allocation per thread
+  static long allocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean)bean;
+      if (sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled()) {
+        return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+      }
+    }
+    return 0;
+  }
+
+  // Slowest passes first
+  synchronized List<PassStats> sortedStats() {
+    ArrayList<PassStats> sorted = new ArrayList<PassStats>(stats.values());
+    Collections.sort(sorted, new Comparator<PassStats>() {
+      @Override
+      public int compare(PassStats a, PassStats b) {
+        return a.nanos < b.nanos ? 1 : a.nanos > b.nanos ? -1 : a.name.compareTo(b.name);
+      }
+    });
+    return sorted;
+  }
+
+  String toTable() {
+    StringBuilder builder = new StringBuilder();
+    String format = "%-36s %6s %8s %10s %12s\n";
+    builder.append(String.format(format, "Pass", "Runs", "Changed", "Time (ms)", "Alloc (KB)"));
+    PassStats total = new PassStats();
+    for (PassStats pass : sortedStats()) {
+      builder.append(String.format(format, pass.name, pass.runs, pass.changes,
+        String.format("%.1f", pass.nanos / 1e6), pass.allocatedBytes / 1024));
+      total.runs += pass.runs;
+      total.changes += pass.changes;
+      total.nanos += pass.nanos;
+      total.allocatedBytes += pass.allocatedBytes;
+    }
+    builder.append(String.format(format, "Total", total.runs, total.changes,
+      String.format("%.1f", total.nanos / 1e6), total.allocatedBytes / 1024));
+    return builder.toString();
+  }
+
+  JSONArray toJSON() throws JSONException {
+    JSONArray array = new JSONArray();
+    for (PassStats pass : sortedStats()) {
+      JSONObject object = new JSONObject();
+      object.put("name", pass.name);
+      object.put("runs", pass.runs);
+      object.put("changes", pass.changes);
+      object.put("nanos", pass.nanos);
+      object.put("allocatedBytes", pass.allocatedBytes);
+      array.put(object);
+    }
+    return array;
+  }
+}
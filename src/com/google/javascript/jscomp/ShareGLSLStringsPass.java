@@ -0,0 +1,189 @@
+package com.google.javascript.jscomp;
+
+import com.google.javascript.rhino.*;
+import java.util.*;
+import java.util.Map.Entry;
+
+/**
+ * Writes the minified GLSL that OptimizeWebGLPass produced only once. Strings
+ * spelled out more than once become one global variable, and long prefixes
+ * shared by several strings become a variable that the rest is concatenated
+ * to at runtime. This runs after every pass that inlines variables, since
+ * those would copy the strings right back.
+ */
+class ShareGLSLStringsPass extends NodeTraversal.AbstractPostOrderCallback implements CompilerPass {
+  AbstractCompiler compiler;
+  Set<String> minifiedGLSL;
+
+  // Uses of each minified string, in the order they were found
+  LinkedHashMap<String, ArrayList<Node>> uses = new LinkedHashMap<String, ArrayList<Node>>();
+
+  ShareGLSLStringsPass(AbstractCompiler compiler, Set<String> minifiedGLSL) {
+    this.compiler = compiler;
+    this.minifiedGLSL = minifiedGLSL;
+  }
+
+  @Override
+  public void visit(NodeTraversal t, Node node, Node parent) {
+    // Property names are strings too
+    if (node.isString() && !parent.isGetProp() && minifiedGLSL.contains(node.getString())) {
+      ArrayList<Node> nodes = uses.get(node.getString());
+      if (nodes == null) {
+        nodes = new ArrayList<Node>();
+        uses.put(node.getString(), nodes);
+      }
+      nodes.add(node);
+    }
+  }
+
+  @Override
+  public void process(Node externs, Node root) {
+    if (minifiedGLSL.isEmpty()) {
+      return;
+    }
+    NodeTraversal.traverse(compiler, root, this);
+    HashMap<String, Integer> counts = new HashMap<String, Integer>();
+    for (Entry<String, ArrayList<Node>> entry : uses.entrySet()) {
+      int count = entry.getValue().size();
+      counts.put(entry.getKey(), isWorthSharing(entry.getKey(), count) ? 1 : count);
+    }
+    HashMap<String, String> prefixes = findSharedPrefixes(counts);
+
+    // Prefixes are declared first since the shared texts may use them
+    ArrayList<Node> declarations = new ArrayList<Node>();
+    int prefixDeclarations = 0;
+    HashMap<String, String> prefixNames = new HashMap<String, String>();
+    for (Entry<String, ArrayList<Node>> entry : uses.entrySet()) {
+      String text = entry.getKey();
+      ArrayList<Node> nodes = entry.getValue();
+      String prefix = prefixes.get(text);
+      Node value = IR.string(text);
+      if (prefix != null) {
+        String prefixName = prefixNames.get(prefix);
+        if (prefixName == null) {
+          prefixName = SHARED_GLSL_NAME + declarations.size();
+          prefixNames.put(prefix, prefixName);
+          declarations.add(prefixDeclarations++, NodeUtil.newVarNode(prefixName, IR.string(prefix)).srcrefTree(nodes.get(0)));
+        }
+        value = prefix.length() == text.length() ? IR.name(prefixName) :
+          new Node(Token.ADD, IR.name(prefixName), IR.string(text.substring(prefix.length())));
+      }
+      if (nodes.size() > 1 && isWorthSharing(text, nodes.size())) {
+        String name = SHARED_GLSL_NAME + declarations.size();
+        declarations.add(NodeUtil.newVarNode(name, value).srcrefTree(nodes.get(0)));
+        value = IR.name(name);
+      }
+      for (Node node : nodes) {
+        node.getParent().replaceChild(node, value.cloneTree().srcrefTree(node));
+      }
+    }
+
+    if (!declarations.isEmpty()) {
+      Node script = compiler.getNodeForCodeInsertion(null);
+      for (int i = declarations.size() - 1; i >= 0; i--) {
+        script.addChildToFront(declarations.get(i));
+      }
+      compiler.reportCodeChange();
+    }
+  }
+
+  // Nothing inlines variables after this pass, and renameVars still
+  // shortens these names
+  static final String SHARED_GLSL_NAME = "JSCompiler_GLSL_";
+
+  // Shorter shared prefixes aren't worth an extra variable and a "+"
+  static final int MIN_SHARED_PREFIX = 32;
+
+  // Rough output sizes, assuming names of two letters after renaming
+  static final int DECLARATION_SIZE = "var xx=;".length();
+  static final int REFERENCE_SIZE = "xx".length();
+  static final int CONCATENATION_SIZE = "xx+".length();
+
+  static boolean isWorthSharing(String text, int uses) {
+    int quoted = text.length() + 2;
+    return uses * quoted > DECLARATION_SIZE + quoted + uses * REFERENCE_SIZE;
+  }
+
+  // Maps texts to the prefix they should share, where counts says how many
+  // times each text is written out. The prefix that saves the most bytes is
+  // picked first and each text gets at most one. Nothing is shared if that
+  // would gzip larger.
+  static HashMap<String, String> findSharedPrefixes(Map<String, Integer> counts) {
+    ArrayList<String> sorted = new ArrayList<String>(counts.keySet());
+    Collections.sort(sorted);
+    String[] chosen = new String[sorted.size()];
+    while (true) {
+      String best = null;
+      int bestStart = 0;
+      int bestEnd = 0;
+      long bestSavings = 0;
+      for (int i = 0; i + 1 < sorted.size(); i++) {
+        if (chosen[i] != null || chosen[i + 1] != null) {
+          continue;
+        }
+        String prefix = commonPrefix(sorted.get(i), sorted.get(i + 1));
+        if (prefix.length() < MIN_SHARED_PREFIX) {
+          continue;
+        }
+
+        // Texts with the same prefix are next to each other once sorted
+        int start = i;
+        int end = i + 2;
+        while (start > 0 && chosen[start - 1] == null && sorted.get(start - 1).startsWith(prefix)) {
+          start--;
+        }
+        while (end < sorted.size() && chosen[end] == null && sorted.get(end).startsWith(prefix)) {
+          end++;
+        }
+        long uses = 0;
+        for (int j = start; j < end; j++) {
+          uses += counts.get(sorted.get(j));
+        }
+        long savings = (uses - 1) * prefix.length() - 2 - DECLARATION_SIZE - uses * CONCATENATION_SIZE;
+        if (savings > bestSavings) {
+          best = prefix;
+          bestStart = start;
+          bestEnd = end;
+          bestSavings = savings;
+        }
+      }
+      if (best == null) {
+        break;
+      }
+      for (int j = bestStart; j < bestEnd; j++) {
+        chosen[j] = best;
+      }
+    }
+
+    HashMap<String, String> prefixes = new HashMap<String, String>();
+    ArrayList<String> before = new ArrayList<String>();
+    ArrayList<String> after = new ArrayList<String>();
+    for (int i = 0; i < chosen.length; i++) {
+      String text = sorted.get(i);
+      for (int j = counts.get(text); j > 0; j--) {
+        before.add(text);
+        after.add(chosen[i] != null ? text.substring(chosen[i].length()) : text);
+      }
+      if (chosen[i] != null) {
+        prefixes.put(text, chosen[i]);
+      }
+    }
+    if (prefixes.isEmpty()) {
+      return prefixes;
+    }
+    after.addAll(new HashSet<String>(prefixes.values()));
+    if (OptimizeWebGLPass.gzipSize(after.toArray(new String[after.size()])) > OptimizeWebGLPass.gzipSize(before.toArray(new String[before.size()]))) {
+      prefixes.clear();
+    }
+    return prefixes;
+  }
+
+  static String commonPrefix(String a, String b) {
+    int length = Math.min(a.length(), b.length());
+    int i = 0;
+    while (i < length && a.charAt(i) == b.charAt(i)) {
+      i++;
+    }
+    return a.substring(0, i);
+  }
+}
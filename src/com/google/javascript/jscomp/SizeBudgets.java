@@ -0,0 +1,146 @@
+package com.google.javascript.jscomp;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.javascript.jscomp.Compiler;
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+import org.json.*;
+
+/**
+ * Guards the size of optimized output. The budgets file maps project
+ * directories (relative to the budgets file) to the largest raw and gzipped
+ * output size allowed for that project. Checking compiles every project with
+ * --optimize and fails if any output is over budget. Updating rewrites the
+ * budgets with the current sizes. Projects are written in sorted order with
+ * one project per line, so size changes show up as small diffs in version
+ * control.
+ */
+class SizeBudgets {
+  static final String DEFAULT_FILE = "size-budgets.json";
+
+  static class ProjectSize {
+    String name;
+    long raw;
+    long gzip;
+    long rawBudget = -1; // Negative when there is no budget yet
+    long gzipBudget = -1;
+    String error; // Null if the project compiled
+  }
+
+  // Returns true if every project is within its budget
+  static boolean run(String budgetsPath, boolean update) throws IOException, JSONException {
+    File file = budgetsPath != null ? new File(budgetsPath) : Globals.installedFile(DEFAULT_FILE);
+    JSONObject budgets = new JSONObject(Files.toString(file, Charsets.UTF_8));
+    File baseDir = file.getAbsoluteFile().getParentFile();
+
+    boolean passed = true;
+    StringBuilder updated = new StringBuilder();
+    String[] names = JSONObject.getNames(budgets);
+    Arrays.sort(names);
+    System.out.println(String.format("%-24s %20s %20s", "Project", "Raw", "Gzip"));
+    for (String name : names) {
+      JSONObject budget = budgets.getJSONObject(name);
+      ProjectSize size = measure(new File(baseDir, name));
+      size.name = name;
+      size.rawBudget = budget.optLong("raw", -1);
+      size.gzipBudget = budget.optLong("gzip", -1);
+      if (size.error != null) {
+        System.out.println(String.format("%-24s %s", name, size.error));
+        passed = false;
+        appendBudget(updated, name, size.rawBudget, size.gzipBudget);
+        continue;
+      }
+      boolean overBudget =
+        size.rawBudget >= 0 && size.raw > size.rawBudget ||
+        size.gzipBudget >= 0 && size.gzip > size.gzipBudget;
+      System.out.println(String.format("%-24s %20s %20s%s", name,
+        describe(size.raw, size.rawBudget), describe(size.gzip, size.gzipBudget),
+        overBudget && !update ? "  OVER BUDGET" : ""));
+      if (overBudget && !update) {
+        passed = false;
+      }
+      appendBudget(updated, name, size.raw, size.gzip);
+    }
+
+    if (update) {
+      Files.write("{\n" + updated + "\n}\n", file, Charsets.UTF_8);
+      System.out.println("Updated " + file.getPath());
+    }
+    return passed;
+  }
+
+  // One project per line so each change is a one line diff
+  static void appendBudget(StringBuilder builder, String name, long raw, long gzip) {
+    if (builder.length() > 0) {
+      builder.append(",\n");
+    }
+    builder.append("  ").append(JSONObject.quote(name)).append(": { ");
+    if (raw >= 0) {
+      builder.append("\"raw\": ").append(raw).append(gzip >= 0 ? ", " : "");
+    }
+    if (gzip >= 0) {
+      builder.append("\"gzip\": ").append(gzip);
+    }
+    builder.append(" }");
+  }
+
+  // Shows the size along with the change from the budget
+  static String describe(long size, long budget) {
+    if (budget < 0 || size == budget) {
+      return Long.toString(size);
+    }
+    return String.format("%d -> %d (%+d)", budget, size, size - budget);
+  }
+
+  // Compiles like "gccjs --optimize" run from the project directory, without
+  // running hooks
+  static ProjectSize measure(File dir) {
+    ProjectSize size = new ProjectSize();
+    ProjectDescription project;
+    try {
+      project = new ProjectDescription(new JSONObject(Files.toString(new File(dir, "project.json"), Charsets.UTF_8)));
+    } catch (Exception e) {
+      size.error = "Could not load " + new File(dir, "project.json").getPath() + ": " + e.getMessage();
+      return size;
+    }
+
+    List<SourceFile> externs = new ArrayList<SourceFile>(ClosureCompilerBuilder.DEFAULT_EXTERNS);
+    List<SourceFile> sources = new ArrayList<SourceFile>();
+    for (String extern : project.externs) {
+      externs.add(SourceFile.fromFile(new File(dir, extern).getPath(), Charsets.UTF_8));
+    }
+    for (String source : project.sources) {
+      sources.add(SourceFile.fromFile(new File(dir, source).getPath(), Charsets.UTF_8));
+    }
+    Flags flags = new Flags();
+    flags.optimizedBuild = true;
+    Compiler compiler = new Compiler();
+    Result result = ClosureCompilerBuilder.compile(compiler, externs, sources, Arrays.asList(project.defines), flags);
+    if (result.errors.length > 0) {
+      size.error = "Error: " + result.errors[0].description;
+      return size;
+    }
+
+    // Measure exactly what would be written to the target
+    byte[] output = (project.wrapper.replace("%output%", compiler.toSource()) + "\n").getBytes(Charsets.UTF_8);
+    size.raw = output.length;
+    size.gzip = gzipSize(output);
+    return size;
+  }
+
+  static long gzipSize(byte[] bytes) {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+    try {
+      GZIPOutputStream stream = new GZIPOutputStream(compressed) {{
+        def.setLevel(Deflater.BEST_COMPRESSION);
+      }};
+      stream.write(bytes);
+      stream.close();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return compressed.size();
+  }
+}
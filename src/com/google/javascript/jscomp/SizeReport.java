@@ -0,0 +1,160 @@
+package com.google.javascript.jscomp;
+
+import com.google.debugging.sourcemap.*;
+import com.google.javascript.rhino.*;
+import java.io.*;
+import java.util.*;
+import org.json.*;
+
+/**
+ * Explains where the bytes in the output come from. Each byte of the final
+ * output is attributed to the source file it came from using a source map,
+ * and the output size is measured before and after every run of the custom
+ * passes so changes to those passes show up as size deltas.
+ */
+class SizeReport {
+  static final String UNMAPPED = "(unmapped)";
+
+  static class PassSize {
+    String name;
+    int before;
+    int after;
+  }
+
+  final ArrayList<PassSize> passSizes = new ArrayList<PassSize>();
+  final HashMap<String, Integer> fileSizes = new HashMap<String, Integer>();
+  int totalSize;
+
+  // The compiler only records a source map while generating code if it has
+  // somewhere to put it
+  static void prepareOptions(CompilerOptions options) {
+    options.sourceMapOutputPath = "size-report.map";
+    options.sourceMapDetailLevel = SourceMap.DetailLevel.ALL;
+    options.sourceMapFormat = SourceMap.Format.V3;
+  }
+
+  PassFactory wrap(final PassFactory factory) {
+    return new PassFactory(factory.getName(), factory.isOneTimePass()) {
+      @Override
+      CompilerPass create(final AbstractCompiler compiler) {
+        final CompilerPass pass = factory.create(compiler);
+        return new CompilerPass() {
+          @Override
+          public void process(Node externs, Node root) {
+            PassSize size = new PassSize();
+            size.name = factory.getName();
+            size.before = compiler.toSource(root).length();
+            pass.process(externs, root);
+            size.after = compiler.toSource(root).length();
+            passSizes.add(size);
+          }
+        };
+      }
+    };
+  }
+
+  // Wraps the passes with the given names wherever they occur
+  List<PassFactory> wrapPasses(List<PassFactory> factories, PassFactory... passes) {
+    HashSet<String> names = new HashSet<String>();
+    for (PassFactory pass : passes) {
+      names.add(pass.getName());
+    }
+    ArrayList<PassFactory> wrapped = new ArrayList<PassFactory>();
+    for (PassFactory factory : factories) {
+      wrapped.add(names.contains(factory.getName()) ? wrap(factory) : factory);
+    }
+    return wrapped;
+  }
+
+  // Must be called with the code from the only call to compiler.toSource()
+  void attributeOutput(Compiler compiler, String code) throws IOException, SourceMapParseException {
+    StringBuilder map = new StringBuilder();
+    compiler.getSourceMap().appendTo(map, "output");
+    SourceMapConsumerV3 consumer = new SourceMapConsumerV3();
+    consumer.parse(map.toString());
+
+    // Find where each line starts to turn line and column pairs into offsets
+    final ArrayList<Integer> lineOffsets = new ArrayList<Integer>();
+    lineOffsets.add(0);
+    for (int i = 0; i < code.length(); i++) {
+      if (code.charAt(i) == '\n') {
+        lineOffsets.add(i + 1);
+      }
+    }
+
+    totalSize = code.length();
+    fileSizes.clear();
+    final int[] mapped = new int[1];
+    consumer.visitMappings(new SourceMapConsumerV3.EntryVisitor() {
+      @Override
+      public void visit(String sourceName, String symbolName, FilePosition sourceStartPosition,
+          FilePosition startPosition, FilePosition endPosition) {
+        int start = lineOffsets.get(startPosition.getLine()) + startPosition.getColumn();
+        int end = lineOffsets.get(endPosition.getLine()) + endPosition.getColumn();
+        Integer size = fileSizes.get(sourceName);
+        fileSizes.put(sourceName, (size == null ? 0 : size) + end - start);
+        mapped[0] += end - start;
+      }
+    });
+    if (mapped[0] < totalSize) {
+      fileSizes.put(UNMAPPED, totalSize - mapped[0]);
+    }
+  }
+
+  // Largest files first
+  List<Map.Entry<String, Integer>> sortedFileSizes() {
+    ArrayList<Map.Entry<String, Integer>> sorted = new ArrayList<Map.Entry<String, Integer>>(fileSizes.entrySet());
+    Collections.sort(sorted, new Comparator<Map.Entry<String, Integer>>() {
+      @Override
+      public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+        int delta = b.getValue() - a.getValue();
+        return delta != 0 ? delta : a.getKey().compareTo(b.getKey());
+      }
+    });
+    return sorted;
+  }
+
+  String toTable() {
+    StringBuilder builder = new StringBuilder();
+    String format = "%-48s %10s %7s\n";
+    builder.append(String.format(format, "File", "Bytes", "%"));
+    for (Map.Entry<String, Integer> entry : sortedFileSizes()) {
+      builder.append(String.format(format, entry.getKey(), entry.getValue(),
+        String.format("%.1f", 100.0 * entry.getValue() / Math.max(1, totalSize))));
+    }
+    builder.append(String.format(format, "Total", totalSize, "100.0"));
+    if (!passSizes.isEmpty()) {
+      format = "%-48s %10s %10s %8s\n";
+      builder.append('\n');
+      builder.append(String.format(format, "Pass", "Before", "After", "Delta"));
+      for (PassSize size : passSizes) {
+        builder.append(String.format(format, size.name, size.before, size.after,
+          String.format("%+d", size.after - size.before)));
+      }
+    }
+    return builder.toString();
+  }
+
+  JSONObject toJSON() throws JSONException {
+    JSONArray files = new JSONArray();
+    for (Map.Entry<String, Integer> entry : sortedFileSizes()) {
+      JSONObject object = new JSONObject();
+      object.put("file", entry.getKey());
+      object.put("bytes", entry.getValue());
+      files.put(object);
+    }
+    JSONArray passes = new JSONArray();
+    for (PassSize size : passSizes) {
+      JSONObject object = new JSONObject();
+      object.put("pass", size.name);
+      object.put("before", size.before);
+      object.put("after", size.after);
+      passes.put(object);
+    }
+    JSONObject report = new JSONObject();
+    report.put("total", totalSize);
+    report.put("files", files);
+    report.put("passes", passes);
+    return report;
+  }
+}
@@ -1,117 +1,198 @@
 package com.google.javascript.jscomp;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import com.google.javascript.jscomp.Compiler;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.*;
+import org.json.*;
 
+/**
+ * Runs the golden file tests. Each test is a pair of files in the tests
+ * directory: "name.input.js" is compiled with --optimize and the result must
+ * match "name.output.js" (a trailing newline in the expected output is
+ * ignored). An optional "name.defines.json" holds project defines in the
+ * same form as the "defines" of a project file. Tests run in parallel and every failure is reported with a diff.
+ * The externs are loaded once and shared by all tests.
+ */
 public class Tests {
-  static void check(String input, String output) {
-    List<SourceFile> externs = new ArrayList<SourceFile>(ClosureCompilerBuilder.DEFAULT_EXTERNS);
+  static final String INPUT_SUFFIX = ".input.js";
+  static final String OUTPUT_SUFFIX = ".output.js";
+  static final String DEFINES_SUFFIX = ".defines.json";
+
+  static class TestCase {
+    String name;
+    String input;
+    String expected;
+    String defines; // Null if there's no defines file
+    String actual;
+    String failure; // Null if the test passed
+  }
+
+  static List<TestCase> loadTests(File dir) throws IOException {
+    File[] files = dir.listFiles();
+    if (files == null) {
+      throw new FileNotFoundException("Could not find tests in " + dir);
+    }
+    ArrayList<TestCase> tests = new ArrayList<TestCase>();
+    for (File file : files) {
+      String fileName = file.getName();
+      if (!fileName.endsWith(INPUT_SUFFIX)) {
+        continue;
+      }
+      TestCase test = new TestCase();
+      test.name = fileName.substring(0, fileName.length() - INPUT_SUFFIX.length());
+      test.input = Files.toString(file, Charsets.UTF_8);
+      File output = new File(dir, test.name + OUTPUT_SUFFIX);
+      if (output.exists()) {
+        test.expected = Files.toString(output, Charsets.UTF_8);
+        if (test.expected.endsWith("\n")) {
+          test.expected = test.expected.substring(0, test.expected.length() - 1);
+        }
+      }
+      File defines = new File(dir, test.name + DEFINES_SUFFIX);
+      if (defines.exists()) {
+        test.defines = Files.toString(defines, Charsets.UTF_8);
+      }
+      tests.add(test);
+    }
+    Collections.sort(tests, new Comparator<TestCase>() {
+      @Override
+      public int compare(TestCase a, TestCase b) {
+        return a.name.compareTo(b.name);
+      }
+    });
+    return tests;
+  }
+
+  static void check(TestCase test, List<SourceFile> externs) throws JSONException {
+    if (test.expected == null) {
+      test.failure = "Missing " + test.name + OUTPUT_SUFFIX;
+      return;
+    }
     List<SourceFile> sources = new ArrayList<SourceFile>();
     List<Define> defines = new ArrayList<Define>();
+    if (test.defines != null) {
+      JSONObject object = new JSONObject(test.defines);
+      for (String name : JSONObject.getNames(object)) {
+        defines.add(ProjectDescription.parseDefine(object, name));
+      }
+    }
     Flags flags = new Flags();
     flags.optimizedBuild = true;
-    sources.add(SourceFile.fromCode("input.js", input));
+    sources.add(SourceFile.fromCode(test.name + INPUT_SUFFIX, test.input));
 
     Compiler compiler = new Compiler();
-    Result result = ClosureCompilerBuilder.compile(compiler, externs, sources, defines, flags);
-    for (JSError error : result.errors) {
-      System.out.println("Error: " + error.description);
-    }
-    for (JSError warning : result.warnings) {
-      System.out.println("Warning: " + warning.description);
+    Result result = ClosureCompilerBuilder.compile(compiler, new ArrayList<SourceFile>(externs), sources, defines, flags);
+    test.actual = compiler.toSource();
+    if (!test.actual.equals(test.expected)) {
+      StringBuilder builder = new StringBuilder();
+      for (JSError error : result.errors) {
+        builder.append("Error: ").append(error.description).append('\n');
+      }
+      for (JSError warning : result.warnings) {
+        builder.append("Warning: ").append(warning.description).append('\n');
+      }
+      builder.append(diff(test.expected, test.actual));
+      test.failure = builder.toString();
     }
+  }
 
-    String code = compiler.toSource();
-    if (!code.equals(output)) {
-      System.out.println("Expected \"" + output + "\" but got \"" + code + "\"");
-      System.exit(1);
-    } else {
-      System.out.println("Test passed");
+  // Compiled output is usually one long line, so single lines are compared
+  // by showing where they start to differ
+  static String diff(String expected, String actual) {
+    String[] expectedLines = expected.split("\n", -1);
+    String[] actualLines = actual.split("\n", -1);
+    StringBuilder builder = new StringBuilder();
+    if (expectedLines.length == 1 && actualLines.length == 1) {
+      int i = 0;
+      while (i < expected.length() && i < actual.length() && expected.charAt(i) == actual.charAt(i)) {
+        i++;
+      }
+      builder.append("- ").append(expected).append('\n');
+      builder.append("+ ").append(actual).append('\n');
+      builder.append("  ");
+      for (int j = 0; j < i; j++) {
+        builder.append(' ');
+      }
+      builder.append("^ first difference at column ").append(i + 1).append('\n');
+      return builder.toString();
     }
-  }
 
-  static void run() {
-    System.out.println("Running tests");
-    testCaptureAwareRenamingPass();
-    System.out.println("All tests passed");
+    // Longest common subsequence of lines
+    int n = expectedLines.length;
+    int m = actualLines.length;
+    int[][] lengths = new int[n + 1][m + 1];
+    for (int i = n - 1; i >= 0; i--) {
+      for (int j = m - 1; j >= 0; j--) {
+        lengths[i][j] = expectedLines[i].equals(actualLines[j]) ?
+          lengths[i + 1][j + 1] + 1 : Math.max(lengths[i + 1][j], lengths[i][j + 1]);
+      }
+    }
+    int i = 0;
+    int j = 0;
+    while (i < n || j < m) {
+      if (i < n && j < m && expectedLines[i].equals(actualLines[j])) {
+        builder.append("  ").append(expectedLines[i++]).append('\n');
+        j++;
+      } else if (j < m && (i == n || lengths[i][j + 1] >= lengths[i + 1][j])) {
+        builder.append("+ ").append(actualLines[j++]).append('\n');
+      } else {
+        builder.append("- ").append(expectedLines[i++]).append('\n');
+      }
+    }
+    return builder.toString();
   }
 
-  static void testCaptureAwareRenamingPass() {
-    check(
-      "var ns = {};" +
-      "ns.abs = function(x) {" +
-      "  return Math.abs(x);" +
-      "};" +
-      "console.log(Math, ns.abs(-1));",
-      "console.log(Math,Math.abs(-1));");
-
-    check(
-      "/** @constructor */" +
-      "function Foo() {}" +
-      "Foo.prototype.abs = function(x) {" +
-      "  return Math.abs(x);" +
-      "};" +
-      "console.log(new Foo().abs(-1));",
-      "console.log(Math.abs(-1));");
-
-    check(
-      "/** @constructor */" +
-      "function Foo() {}" +
-      "Foo.prototype.abs = function(x) {" +
-      "  return Math.abs(x);" +
-      "};" +
-      "console.log(Math, new Foo().abs(-1));",
-      "function a(){}" +
-      "a.prototype.abs=function(b){return Math.abs(b)};" +
-      "console.log(Math,(new a).abs(-1));");
-
-    check(
-      "/** @constructor */" +
-      "function Foo() {}" +
-      "Foo.prototype.abs = function(x) {" +
-      "  return Math.abs(x);" +
-      "};" +
-      "var capture = Math;" +
-      "console.log(capture, new Foo().abs(-1));",
-      "function a(){}" +
-      "a.prototype.abs=function(b){return Math.abs(b)};" +
-      "console.log(Math,(new a).abs(-1));");
+  // Returns true if all tests passed
+  static boolean run(String testsDirectory) throws IOException, InterruptedException {
+    File dir = testsDirectory != null ? new File(testsDirectory) : Globals.installedFile("tests");
+    final List<TestCase> tests = loadTests(dir);
+    System.out.println("Running " + tests.size() + " tests from " + dir.getPath());
 
-    check(
-      "/** @constructor */" +
-      "function Foo() {}" +
-      "Foo.prototype.abs = function(x) {" +
-      "  return Math.abs(x);" +
-      "};" +
-      "var capture = (console.log(), Math);" +
-      "console.log(capture, new Foo().abs(-1));",
-      "function a(){}" +
-      "a.prototype.abs=function(b){return Math.abs(b)};" +
-      "var c=(console.log(),Math);" +
-      "console.log(c,(new a).abs(-1));");
+    // Load the externs before starting so tests don't race to load them
+    final List<SourceFile> externs = new ArrayList<SourceFile>(ClosureCompilerBuilder.DEFAULT_EXTERNS);
+    for (SourceFile extern : externs) {
+      extern.getCode();
+    }
 
-    check(
-      "/** @constructor */" +
-      "function Foo() {}" +
-      "Foo.prototype.abs = function(x) {" +
-      "  return Math.abs(x);" +
-      "};" +
-      "var capture = [Math];" +
-      "console.log(capture, new Foo().abs(-1));",
-      "function a(){}" +
-      "a.prototype.abs=function(b){return Math.abs(b)};" +
-      "console.log([Math],(new a).abs(-1));");
+    long start = System.nanoTime();
+    int threads = Math.max(1, Math.min(tests.size(), Runtime.getRuntime().availableProcessors()));
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    for (final TestCase test : tests) {
+      pool.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            check(test, externs);
+          } catch (Throwable t) {
+            StringWriter writer = new StringWriter();
+            t.printStackTrace(new PrintWriter(writer));
+            test.failure = writer.toString();
+          }
+        }
+      });
+    }
+    pool.shutdown();
+    pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    long millis = (System.nanoTime() - start) / 1000000;
 
-    check(
-      "/** @constructor */" +
-      "function Foo() {}" +
-      "Foo.prototype.abs = function(x) {" +
-      "  return Math.abs(x);" +
-      "};" +
-      "var capture = { capture: Math };" +
-      "console.log(capture, new Foo().abs(-1));",
-      "function a(){}" +
-      "a.prototype.abs=function(b){return Math.abs(b)};" +
-      "console.log({capture:Math},(new a).abs(-1));");
+    // Report failures in a stable order
+    int failed = 0;
+    for (TestCase test : tests) {
+      if (test.failure != null) {
+        failed++;
+        System.out.println("\nFailed: " + test.name);
+        System.out.print(test.failure);
+      }
+    }
+    System.out.println();
+    if (failed == 0) {
+      System.out.println("All " + tests.size() + " tests passed (" + millis + " ms)");
+    } else {
+      System.out.println(failed + " of " + tests.size() + " tests failed (" + millis + " ms)");
+    }
+    return failed == 0;
   }
 }
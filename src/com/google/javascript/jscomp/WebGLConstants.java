@@ -0,0 +1,89 @@
+package com.google.javascript.jscomp;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import java.io.*;
+import java.util.*;
+import org.json.*;
+
+/**
+ * The constants that OptimizeWebGLPass inlines, loaded from
+ * webgl-constants.json. The file is a list of groups of constants, each with
+ * the types that have them, so WebGL 2 shares the WebGL 1 names instead of
+ * repeating them. Each group keeps its names sorted next to an array of their
+ * values, so a lookup is a binary search that doesn't box anything.
+ */
+class WebGLConstants {
+  static final String DEFAULT_FILE = "webgl-constants.json";
+
+  static class Group {
+    final String[] names;
+    final double[] values;
+
+    Group(JSONObject constants) throws JSONException {
+      names = JSONObject.getNames(constants);
+      Arrays.sort(names);
+      values = new double[names.length];
+      for (int i = 0; i < names.length; i++) {
+        values[i] = constants.getDouble(names[i]);
+      }
+    }
+  }
+
+  final HashMap<String, Group[]> groupsByType = new HashMap<String, Group[]>();
+
+  WebGLConstants(JSONArray groups) throws JSONException {
+    HashMap<String, ArrayList<Group>> lists = new HashMap<String, ArrayList<Group>>();
+    for (int i = 0; i < groups.length(); i++) {
+      JSONObject contents = groups.getJSONObject(i);
+      Group group = new Group(contents.getJSONObject("constants"));
+      JSONArray types = contents.getJSONArray("types");
+      for (int j = 0; j < types.length(); j++) {
+        ArrayList<Group> list = lists.get(types.getString(j));
+        if (list == null) {
+          list = new ArrayList<Group>();
+          lists.put(types.getString(j), list);
+        }
+        list.add(group);
+      }
+    }
+    for (Map.Entry<String, ArrayList<Group>> entry : lists.entrySet()) {
+      groupsByType.put(entry.getKey(), entry.getValue().toArray(new Group[entry.getValue().size()]));
+    }
+  }
+
+  Set<String> types() {
+    return groupsByType.keySet();
+  }
+
+  // Returns NaN if the type doesn't have a constant with that name
+  double lookup(String type, String name) {
+    Group[] groups = groupsByType.get(type);
+    if (groups != null) {
+      for (Group group : groups) {
+        int index = Arrays.binarySearch(group.names, name);
+        if (index >= 0) {
+          return group.values[index];
+        }
+      }
+    }
+    return Double.NaN;
+  }
+
+  static WebGLConstants instance;
+
+  // Loaded once and shared by every build in watch mode
+  static synchronized WebGLConstants get() {
+    if (instance == null) {
+      File file = Globals.installedFile(DEFAULT_FILE);
+      try {
+        instance = new WebGLConstants(new JSONArray(Files.toString(file, Charsets.UTF_8)));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      } catch (JSONException e) {
+        throw new RuntimeException(e);
+      }
+    }
+    return instance;
+  }
+}
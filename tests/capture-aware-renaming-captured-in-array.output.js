@@ -0,0 +1 @@
+function a(){}a.prototype.abs=function(b){return Math.abs(b)};console.log([Math],(new a).abs(-1));
@@ -0,0 +1,7 @@
+/** @constructor */
+function Foo() {}
+Foo.prototype.abs = function(x) {
+  return Math.abs(x);
+};
+var capture = (console.log(), Math);
+console.log(capture, new Foo().abs(-1));
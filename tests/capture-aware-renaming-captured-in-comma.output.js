@@ -0,0 +1 @@
+function a(){}a.prototype.abs=function(b){return Math.abs(b)};var c=(console.log(),Math);console.log(c,(new a).abs(-1));
@@ -0,0 +1,5 @@
+var ns = {};
+ns.abs = function(x) {
+  return Math.abs(x);
+};
+console.log(Math, ns.abs(-1));
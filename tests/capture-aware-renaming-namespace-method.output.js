@@ -0,0 +1 @@
+console.log(Math,Math.abs(-1));
@@ -0,0 +1,6 @@
+/** @constructor */
+function Foo() {}
+Foo.prototype.abs = function(x) {
+  return Math.abs(x);
+};
+console.log(Math, new Foo().abs(-1));
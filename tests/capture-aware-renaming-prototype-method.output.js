@@ -0,0 +1 @@
+console.log(Math.abs(-1));
@@ -0,0 +1,32 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @const {GLSL} */
+var FRAGMENT_SHADER = '\
+  precision mediump float;\
+  uniform vec4 color;\
+  uniform float unusedUniform;\
+  varying vec2 coord;\
+  varying vec3 unusedVarying;\
+  const float SCALE = 2.0 * 0.5;\
+  const float OFFSET = 0.25;\
+  float unusedHelper(float x) { return x * 3.0; }\
+  float helper(float x) { return x * SCALE + OFFSET * (1.0 + 2.0); }\
+  void main() {\
+    gl_FragColor = color * helper(coord.x) + vec4(2.0 * 3.0, 1.0 - 3.0, 0.0, 0.0);\
+  }\
+';
+
+/** @const {GLSL} */
+var VERTEX_SHADER = '\
+  attribute vec2 vertex;\
+  attribute vec2 unusedAttribute;\
+  varying vec2 coord;\
+  varying vec3 unusedVarying;\
+  void main() {\
+    coord = vertex;\
+    gl_Position = vec4(vertex, 0.0, 1.0);\
+  }\
+';
+
+console.log(VERTEX_SHADER, FRAGMENT_SHADER);
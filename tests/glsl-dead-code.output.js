@@ -0,0 +1 @@
+console.log("attribute vec2 b,f;varying vec2 a;varying vec3 g;void main(){a=b;gl_Position=vec4(b,0.,1.);}","precision mediump float;uniform vec4 c;varying vec2 a;float d(float e){return e*1.+.75;}void main(){gl_FragColor=c*d(a.x)+vec4(6.,-2.,0.,0.);}");
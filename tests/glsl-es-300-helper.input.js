@@ -0,0 +1,24 @@
+/** @typedef {string} */
+var GLSL;
+
+// Joined in front of FRAGMENT_SHADER at runtime, so "texture" here is the
+// ES 3.00 built-in even though this string has no "#version" of its own
+/** @const {GLSL} */
+var SAMPLING_HELPER = '\
+  uniform sampler2D tex;\
+  vec4 sampleIt(vec2 uv) { return texture(tex, uv); }\
+';
+
+/** @const {GLSL} */
+var FRAGMENT_SHADER = '\
+#version 300 es\n\
+  precision mediump float;\
+  in vec2 coord;\
+  out vec4 color;\
+  vec4 sampleIt(vec2 uv);\
+  void main() {\
+    color = sampleIt(coord);\
+  }\
+';
+
+console.log(FRAGMENT_SHADER.replace('\n', '\n' + SAMPLING_HELPER));
@@ -0,0 +1 @@
+console.log("#version 300 es\nprecision mediump float;in vec2 d;out vec4 c;vec4 a(vec2 b);void main(){c=a(d);}".replace("\n","\nuniform sampler2D e;vec4 a(vec2 b){return texture(e,b);}"));
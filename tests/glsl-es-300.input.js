@@ -0,0 +1,36 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @const {GLSL} */
+var VERTEX_SHADER = '\
+#version 300 es\n\
+  in vec3 position;\
+  in vec2 uv;\
+  uniform mat4 matrix;\
+  out vec2 coord;\
+  flat out uint index;\
+  void main() {\
+    coord = uv;\
+    index = uint(gl_VertexID);\
+    gl_Position = matrix * vec4(position, 1.0);\
+  }\
+';
+
+/** @const {GLSL} */
+var FRAGMENT_SHADER = '\
+#version 300 es\n\
+  precision highp float;\
+  precision highp sampler3D;\
+  uniform sampler3D volume;\
+  uniform sampler2D texture0;\
+  in vec2 coord;\
+  flat in uint index;\
+  out vec4 color;\
+  vec4 sampleVolume(vec3 p) { return texture(volume, p) + texelFetch(texture0, ivec2(0), 0); }\
+  void main() {\
+    uvec4 bits = uvec4(index, index, index, index);\
+    color = sampleVolume(vec3(coord, float(bits.x)));\
+  }\
+';
+
+console.log(VERTEX_SHADER, FRAGMENT_SHADER);
@@ -0,0 +1 @@
+console.log("#version 300 es\nin vec3 g;in vec2 j;uniform mat4 e;out vec2 a;flat out uint b;void main(){a=j;b=uint(gl_VertexID);gl_Position=e*vec4(g,1.);}","#version 300 es\nprecision highp float;precision highp sampler3D;uniform sampler3D k;uniform sampler2D i;in vec2 a;flat in uint b;out vec4 d;vec4 h(vec3 f){return texture(k,f)+texelFetch(i,ivec2(0),0);}void main(){uvec4 c=uvec4(b);d=h(vec3(a,float(c.x)));}");
@@ -0,0 +1,31 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @const {GLSL} */
+var VERTEX_SHADER = '\
+  attribute vec2 vertex;\
+  void main() {\
+    gl_Position = vec4(vertex, 0.0, 1.0);\
+  }\
+';
+
+/** @const {GLSL} */
+var FRAGMENT_SHADER = '\
+  precision mediump float;\
+  uniform vec4 color;\
+  void main() {\
+    gl_FragColor = color;\
+  }\
+';
+
+/**
+ * @param {WebGLRenderingContext} gl
+ * @param {WebGLProgram} program
+ */
+function setup(gl, program) {
+  gl.bindAttribLocation(program, 0, 'vertex');
+  gl.uniform4f(gl.getUniformLocation(program, 'color'), 1, 0, 0, 1);
+  console.log(VERTEX_SHADER, FRAGMENT_SHADER, gl.getAttribLocation(program, 'vertex'));
+}
+
+setup(document.createElement('canvas').getContext('webgl'), null);
@@ -0,0 +1 @@
+var a=document.createElement("canvas").getContext("webgl");a.bindAttribLocation(null,0,"a");a.uniform4f(a.getUniformLocation(null,"b"),1,0,0,1);console.log("attribute vec2 a;void main(){gl_Position=vec4(a,0.,1.);}","precision mediump float;uniform vec4 b;void main(){gl_FragColor=b;}",a.getAttribLocation(null,"a"));
@@ -0,0 +1,30 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @const {GLSL} */
+var BLUR_X_SHADER = '\
+  precision mediump float;\
+  uniform sampler2D texture;\
+  uniform vec2 size;\
+  varying vec2 coord;\
+  vec4 sampleAt(vec2 offset) { return texture2D(texture, coord + offset / size); }\
+  void main() {\
+    vec4 sum = sampleAt(vec2(-1.0, 0.0)) + sampleAt(vec2(1.0, 0.0));\
+    gl_FragColor = sum * 0.5;\
+  }\
+';
+
+/** @const {GLSL} */
+var BLUR_Y_SHADER = '\
+  precision mediump float;\
+  uniform sampler2D texture;\
+  uniform vec2 size;\
+  varying vec2 coord;\
+  vec4 fetchPixel(vec2 delta) { return texture2D(texture, coord + delta / size); }\
+  void main() {\
+    vec4 total = fetchPixel(vec2(0.0, -1.0)) + fetchPixel(vec2(0.0, 1.0));\
+    gl_FragColor = total * 0.5;\
+  }\
+';
+
+console.log(BLUR_X_SHADER, BLUR_Y_SHADER);
@@ -0,0 +1 @@
+var a="precision mediump float;uniform sampler2D c;uniform vec2 b;varying vec2 a;vec4 d(vec2 e){return texture2D(c,a+e/b);}void main(){vec4 f=d(vec2(";console.log(a+"-1.,0.))+d(vec2(1.,0.));gl_FragColor=f*.5;}",a+"0.,-1.))+d(vec2(0.,1.));gl_FragColor=f*.5;}");
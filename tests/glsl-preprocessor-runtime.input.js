@@ -0,0 +1,27 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @define {boolean} */
+var FEATURE = false;
+
+/** @define {number} */
+var LEVEL = 0;
+
+// RUNTIME comes from a header joined at runtime, so these conditionals are
+// kept and need the project defines they mention
+/** @const {GLSL} */
+var FRAGMENT_SHADER = '\
+  precision mediump float;\n\
+  uniform vec4 color;\n\
+  void main() {\n\
+#if defined(RUNTIME) && FEATURE\n\
+    gl_FragColor = color;\n\
+#elif RUNTIME > LEVEL\n\
+    gl_FragColor = color * 0.5;\n\
+#else\n\
+    gl_FragColor = vec4(0.0);\n\
+#endif\n\
+  }\n\
+';
+
+console.log(FRAGMENT_SHADER);
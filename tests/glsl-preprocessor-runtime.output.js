@@ -0,0 +1 @@
+console.log("#define b 1\n#define c 2\nprecision mediump float;uniform vec4 a;void main(){\n#if defined(d)&&b\ngl_FragColor=a;\n#elif d>c\ngl_FragColor=a*.5;\n#else\ngl_FragColor=vec4(0.);\n#endif\n}");
@@ -0,0 +1,23 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @const {GLSL} */
+var FRAGMENT_SHADER = '\
+#ifdef GL_ES\n\
+  precision mediump float;\n\
+#endif\n\
+#define SCALE 0.5\n\
+#define QUALITY 2\n\
+  uniform vec4 color;\n\
+  void main() {\n\
+#if QUALITY > 1 && defined(GL_ES)\n\
+    gl_FragColor = color * SCALE;\n\
+#elif QUALITY == 1\n\
+    gl_FragColor = color;\n\
+#else\n\
+    gl_FragColor = vec4(SCALE);\n\
+#endif\n\
+  }\n\
+';
+
+console.log(FRAGMENT_SHADER);
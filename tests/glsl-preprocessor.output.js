@@ -0,0 +1 @@
+console.log("precision mediump float;uniform vec4 a;void main(){gl_FragColor=a*.5;}");
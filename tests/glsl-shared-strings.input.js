@@ -0,0 +1,43 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @const {GLSL} */
+var BLUR_SHADER = '\
+  precision mediump float;\
+  uniform sampler2D texture;\
+  uniform vec2 size;\
+  varying vec2 coord;\
+  vec4 sampleAt(vec2 offset) { return texture2D(texture, coord + offset / size); }\
+  void main() {\
+    vec4 sum = sampleAt(vec2(-1.0)) + sampleAt(vec2(1.0));\
+    gl_FragColor = sum * 0.5;\
+  }\
+';
+
+// The same shader once minified
+/** @const {GLSL} */
+var BLUR_SHADER_COPY = '\
+  precision mediump float;\
+  uniform  sampler2D  texture;\
+  uniform vec2 size;\
+  varying vec2 coord;\
+  vec4 sampleAt(vec2 offset) { return texture2D(texture, coord + offset / size); }\
+  void main() {\
+    vec4 sum = sampleAt(vec2(-1.0)) + sampleAt(vec2(1.0));\
+    gl_FragColor = sum * (0.5);\
+  }\
+';
+
+/** @const {GLSL} */
+var TINT_SHADER = '\
+  precision mediump float;\
+  uniform sampler2D texture;\
+  uniform vec2 size;\
+  varying vec2 coord;\
+  vec4 sampleAt(vec2 offset) { return texture2D(texture, coord + offset / size); }\
+  void main() {\
+    gl_FragColor = sampleAt(vec2(0.0)) * vec4(1.0, 0.5, 0.5, 1.0);\
+  }\
+';
+
+console.log(BLUR_SHADER, BLUR_SHADER_COPY, TINT_SHADER);
@@ -0,0 +1 @@
+var a="precision mediump float;uniform sampler2D e;uniform vec2 d;varying vec2 b;vec4 a(vec2 c){return texture2D(e,b+c/d);}void main(){",b=a+"vec4 f=a(vec2(-1.))+a(vec2(1.));gl_FragColor=f*.5;}";console.log(b,b,a+"gl_FragColor=a(vec2(0.))*vec4(1.,.5,.5,1.);}");
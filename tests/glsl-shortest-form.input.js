@@ -0,0 +1,18 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @const {GLSL} */
+var FRAGMENT_SHADER = '\
+  precision mediump float;\
+  uniform vec4 color;\
+  uniform float scale;\
+  varying vec2 coord;\
+  float shade(float x) { return (x * 0.5 + 0.0625); }\
+  void main() {\
+    vec4 tint = vec4(scale, scale, scale, scale);\
+    float fade = (coord.x) * (-2.0) + 1000.0;\
+    gl_FragColor = mix(color, (tint), (shade(fade))) * vec4(1.0, 1.0, 1.0, 1.0);\
+  }\
+';
+
+console.log(FRAGMENT_SHADER);
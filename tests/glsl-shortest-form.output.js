@@ -0,0 +1 @@
+console.log("precision mediump float;uniform vec4 a;uniform float d;varying vec2 b;float e(float g){return g*.5+.0625;}void main(){vec4 f=vec4(d);float c=b.x*-2.+1e3;gl_FragColor=mix(a,f,e(c))*vec4(1.);}");
@@ -0,0 +1,25 @@
+/** @typedef {string} */
+var GLSL;
+
+// "texture" is only a keyword in ES 3.00, so this ES 1.00 shader can rename
+// it, as long as the location lookup below is renamed the same way
+/** @const {GLSL} */
+var FRAGMENT_SHADER = '\
+  precision mediump float;\
+  uniform sampler2D texture;\
+  varying vec2 coord;\
+  void main() {\
+    gl_FragColor = texture2D(texture, coord);\
+  }\
+';
+
+/**
+ * @param {WebGLRenderingContext} gl
+ * @param {WebGLProgram} program
+ */
+function setup(gl, program) {
+  gl.uniform1i(gl.getUniformLocation(program, 'texture'), 0);
+  console.log(FRAGMENT_SHADER);
+}
+
+setup(document.createElement('canvas').getContext('webgl'), null);
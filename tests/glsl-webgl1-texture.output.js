@@ -0,0 +1 @@
+var a=document.createElement("canvas").getContext("webgl");a.uniform1i(a.getUniformLocation(null,"a"),0);console.log("precision mediump float;uniform sampler2D a;varying vec2 b;void main(){gl_FragColor=texture2D(a,b);}");
@@ -0,0 +1,28 @@
+/** @typedef {string} */
+var GLSL;
+
+/** @const {GLSL} */
+var VERTEX_SHADER = '\
+  uniform float scale;\
+  attribute vec2 vertex;\
+  void main() {\
+    gl_Position = vec4(vertex * scale, 0.0, 1.0);\
+  }\
+';
+
+var gl = /** @type {WebGLRenderingContext} */ (document.createElement('canvas').getContext('webgl'));
+var program = gl.createProgram();
+var shader = gl.createShader(gl.VERTEX_SHADER);
+gl.shaderSource(shader, VERTEX_SHADER);
+gl.compileShader(shader);
+gl.attachShader(program, shader);
+gl.linkProgram(program);
+
+// Both lookups move up to right after linkProgram()
+function draw() {
+  gl.uniform1f(gl.getUniformLocation(program, 'scale'), Math.random());
+  gl.vertexAttribPointer(gl.getAttribLocation(program, 'vertex'), 2, gl.FLOAT, false, 0, 0);
+  gl.drawArrays(gl.POINTS, 0, 1);
+}
+
+setInterval(draw, 16);
@@ -0,0 +1 @@
+var a=document.createElement("canvas").getContext("webgl"),b=a.createProgram(),c=a.createShader(35633);a.shaderSource(c,"uniform float a;attribute vec2 b;void main(){gl_Position=vec4(b*a,0.,1.);}");a.compileShader(c);a.attachShader(b,c);a.linkProgram(b);var d=a.getUniformLocation(b,"a"),e=a.getAttribLocation(b,"b");setInterval(function(){a.uniform1f(d,Math.random());a.vertexAttribPointer(e,2,5126,!1,0,0);a.drawArrays(0,0,1)},16);
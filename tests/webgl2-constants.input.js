@@ -0,0 +1,12 @@
+/**
+ * The externs don't know about WebGL 2 or this extension yet
+ * @constructor
+ */
+function WebGL2RenderingContext() {}
+
+/** @constructor */
+function EXT_disjoint_timer_query() {}
+
+var gl = /** @type {WebGL2RenderingContext} */ (document.createElement('canvas').getContext('webgl2'));
+var timer = /** @type {EXT_disjoint_timer_query} */ (gl.getExtension('EXT_disjoint_timer_query'));
+console.log(gl.TEXTURE_3D, gl.TEXTURE_2D, gl.RGBA32F, timer.TIME_ELAPSED_EXT);
@@ -0,0 +1 @@
+document.createElement("canvas").getContext("webgl2").getExtension("EXT_disjoint_timer_query");console.log(32879,3553,34836,35007);